@@ -0,0 +1,12 @@
+package com.hichem.soft.tree.view;
+
+import java.util.List;
+
+/**
+ * Fetches the children of a lazy node one page at a time. Called on a
+ * background thread; returning fewer than {@code limit} nodes marks the
+ * last page.
+ */
+public interface ChildLoader<T> {
+	List<TreeNode<T>> loadChildren(TreeNode<T> parent, int offset, int limit) throws Exception;
+}
@@ -0,0 +1,366 @@
+package com.hichem.soft.tree.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tree kept in parallel arrays instead of TreeNode objects, for trees with
+ * millions of nodes. A node is an int index; parent, first child and next
+ * sibling links are ints, flags are packed in a byte, and icon and bar
+ * color arrays only exist once a node sets one. That is about 20 bytes per
+ * node plus its data, against over 100 for a TreeNode with its child list.
+ *
+ * <p>The adapter still works with TreeNodes: {@link #createRoots} and
+ * {@link #childLoader} hand out lightweight {@link NodeView}s for the part of
+ * the tree that is expanded, and load the rest page by page as it is
+ * expanded. {@link #materialize} builds a full TreeNode subtree for
+ * {@link TreeUtils} and other whole-tree helpers. The store is not
+ * synchronized; finish editing it before the loader's thread reads it.
+ */
+public class CompactTreeStore<T> {
+
+	public static final int NONE = -1;
+
+	private static final byte FLAG_EXPANDED = 1;
+
+	/** A TreeNode standing for one node of the store */
+	public static class NodeView<T> extends TreeNode<T> {
+		final CompactTreeStore<T> store;
+		final int index;
+
+		NodeView(CompactTreeStore<T> store, int index) {
+			super(store.getData(index));
+			this.store = store;
+			this.index = index;
+			this.expanded = store.isExpanded(index);
+			this.iconResId = store.getIconResId(index);
+			this.barColor = store.getBarColor(index);
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		/** Also records the state in the store, so new views start the same way */
+		@Override
+		public void setExpanded(boolean expanded) {
+			super.setExpanded(expanded);
+			store.setExpanded(index, expanded);
+		}
+	}
+
+	private int size;
+	private Object[] data;
+	private int[] parent;
+	private int[] firstChild;
+	private int[] lastChild;
+	private int[] nextSibling;
+	private byte[] flags;
+	// Allocated on first use, most trees never set these
+	private int[] iconResIds;
+	private int[] barColors;
+
+	private int firstRoot = NONE;
+	private int lastRoot = NONE;
+
+	public CompactTreeStore() {
+		this(16);
+	}
+
+	public CompactTreeStore(int capacity) {
+		capacity = Math.max(1, capacity);
+		data = new Object[capacity];
+		parent = new int[capacity];
+		firstChild = new int[capacity];
+		lastChild = new int[capacity];
+		nextSibling = new int[capacity];
+		flags = new byte[capacity];
+	}
+
+	/** Copies a TreeNode tree, keeping data, expanded state, icons and colors */
+	public static <T> CompactTreeStore<T> copyOf(List<TreeNode<T>> roots) {
+		int count = 0;
+		for (TreeNode<T> root : roots) {
+			count += 1 + root.getDescendantCount();
+		}
+		CompactTreeStore<T> store = new CompactTreeStore<>(count);
+		// parents[d] is the last node added at level d - 1, the parent of the next one at level d
+		int[] parents = new int[16];
+		for (TreeNode<T> node : TreeTraversal.iterate(roots, TreeTraversal.Order.PRE_ORDER)) {
+			int depth = node.getLevel();
+			if (depth + 1 >= parents.length)
+				parents = Arrays.copyOf(parents, parents.length * 2);
+			int index = store.add(depth == 0 ? NONE : parents[depth], node.data);
+			parents[depth + 1] = index;
+			if (node.expanded)
+				store.setExpanded(index, true);
+			if (node.iconResId != -1)
+				store.setIconResId(index, node.iconResId);
+			if (node.barColor != -1)
+				store.setBarColor(index, node.barColor);
+		}
+		return store;
+	}
+
+	// === Editing ===
+
+	/** Appends a node under the parent, or at the top level for NONE; returns its index */
+	public int add(int parentIndex, T value) {
+		if (parentIndex != NONE)
+			checkIndex(parentIndex);
+		if (size == data.length)
+			grow();
+		int index = size++;
+		data[index] = value;
+		parent[index] = parentIndex;
+		firstChild[index] = NONE;
+		lastChild[index] = NONE;
+		nextSibling[index] = NONE;
+		if (parentIndex == NONE) {
+			if (lastRoot == NONE)
+				firstRoot = index;
+			else
+				nextSibling[lastRoot] = index;
+			lastRoot = index;
+		} else {
+			if (lastChild[parentIndex] == NONE)
+				firstChild[parentIndex] = index;
+			else
+				nextSibling[lastChild[parentIndex]] = index;
+			lastChild[parentIndex] = index;
+		}
+		return index;
+	}
+
+	private void grow() {
+		int capacity = data.length + (data.length >> 1) + 1;
+		data = Arrays.copyOf(data, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		firstChild = Arrays.copyOf(firstChild, capacity);
+		lastChild = Arrays.copyOf(lastChild, capacity);
+		nextSibling = Arrays.copyOf(nextSibling, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		if (iconResIds != null)
+			iconResIds = grown(iconResIds, capacity);
+		if (barColors != null)
+			barColors = grown(barColors, capacity);
+	}
+
+	private static int[] grown(int[] values, int capacity) {
+		int old = values.length;
+		int[] copy = Arrays.copyOf(values, capacity);
+		Arrays.fill(copy, old, capacity, -1);
+		return copy;
+	}
+
+	/** Drops spare capacity once the tree is complete */
+	public void trimToSize() {
+		data = Arrays.copyOf(data, size);
+		parent = Arrays.copyOf(parent, size);
+		firstChild = Arrays.copyOf(firstChild, size);
+		lastChild = Arrays.copyOf(lastChild, size);
+		nextSibling = Arrays.copyOf(nextSibling, size);
+		flags = Arrays.copyOf(flags, size);
+		if (iconResIds != null)
+			iconResIds = Arrays.copyOf(iconResIds, size);
+		if (barColors != null)
+			barColors = Arrays.copyOf(barColors, size);
+	}
+
+	public void setData(int index, T value) {
+		checkIndex(index);
+		data[index] = value;
+	}
+
+	public void setExpanded(int index, boolean expanded) {
+		checkIndex(index);
+		if (expanded)
+			flags[index] |= FLAG_EXPANDED;
+		else
+			flags[index] &= ~FLAG_EXPANDED;
+	}
+
+	public void setIconResId(int index, int resId) {
+		checkIndex(index);
+		if (iconResIds == null) {
+			if (resId == -1)
+				return;
+			iconResIds = grown(new int[0], data.length);
+		}
+		iconResIds[index] = resId;
+	}
+
+	public void setBarColor(int index, int color) {
+		checkIndex(index);
+		if (barColors == null) {
+			if (color == -1)
+				return;
+			barColors = grown(new int[0], data.length);
+		}
+		barColors[index] = color;
+	}
+
+	// === Reading ===
+
+	public int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getData(int index) {
+		checkIndex(index);
+		return (T) data[index];
+	}
+
+	public boolean isExpanded(int index) {
+		checkIndex(index);
+		return (flags[index] & FLAG_EXPANDED) != 0;
+	}
+
+	public int getIconResId(int index) {
+		checkIndex(index);
+		return iconResIds != null ? iconResIds[index] : -1;
+	}
+
+	public int getBarColor(int index) {
+		checkIndex(index);
+		return barColors != null ? barColors[index] : -1;
+	}
+
+	/** Parent index, or NONE for a top-level node */
+	public int getParent(int index) {
+		checkIndex(index);
+		return parent[index];
+	}
+
+	/** First top-level node, or NONE if the store is empty */
+	public int getFirstRoot() {
+		return firstRoot;
+	}
+
+	public int getFirstChild(int index) {
+		checkIndex(index);
+		return firstChild[index];
+	}
+
+	public int getNextSibling(int index) {
+		checkIndex(index);
+		return nextSibling[index];
+	}
+
+	/** Counts by walking the sibling links, O(children) */
+	public int getChildCount(int index) {
+		int count = 0;
+		for (int child = getFirstChild(index); child != NONE; child = nextSibling[child]) {
+			count++;
+		}
+		return count;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+	}
+
+	// === TreeNode views ===
+
+	/**
+	 * Top-level views for an adapter. Expanded nodes come with their children
+	 * loaded; collapsed nodes with children are lazy, to be filled by
+	 * {@link #childLoader}.
+	 */
+	public TreeRoot<T> createRoots() {
+		TreeRoot<T> roots = new TreeRoot<>();
+		for (int index = firstRoot; index != NONE; index = nextSibling[index]) {
+			roots.add(view(index));
+		}
+		return roots;
+	}
+
+	/** Loads pages of child views for lazy views created by this store */
+	public ChildLoader<T> childLoader() {
+		return (parentView, offset, limit) -> {
+			ArrayList<TreeNode<T>> page = new ArrayList<>();
+			int index = indexOf(parentView);
+			if (index == NONE)
+				return page;
+			// Continue after the last loaded child instead of walking offset links
+			int child;
+			TreeRoot<T> loaded = parentView.getChildren();
+			if (offset > 0 && offset == loaded.size() && indexOf(loaded.get(offset - 1)) != NONE) {
+				child = nextSibling[indexOf(loaded.get(offset - 1))];
+			} else {
+				child = firstChild[index];
+				for (int i = 0; i < offset && child != NONE; i++) {
+					child = nextSibling[child];
+				}
+			}
+			for (; child != NONE && page.size() < limit; child = nextSibling[child]) {
+				page.add(view(child));
+			}
+			return page;
+		};
+	}
+
+	/** The store index behind a view, or NONE if the node is not one of this store's views */
+	public int indexOf(TreeNode<T> node) {
+		if (node instanceof NodeView && ((NodeView<T>) node).store == this)
+			return ((NodeView<T>) node).index;
+		return NONE;
+	}
+
+	/** A view of the node with its whole subtree loaded, for whole-tree helpers */
+	public TreeNode<T> materialize(int index) {
+		checkIndex(index);
+		return build(index, false);
+	}
+
+	/** The whole tree as views, fully loaded */
+	public TreeRoot<T> toTreeRoot() {
+		TreeRoot<T> roots = new TreeRoot<>();
+		for (int index = firstRoot; index != NONE; index = nextSibling[index]) {
+			roots.add(build(index, false));
+		}
+		return roots;
+	}
+
+	/** A view whose children are loaded as far as the store's expanded flags reach */
+	private NodeView<T> view(int index) {
+		return build(index, true);
+	}
+
+	/**
+	 * Builds the view subtree of a node; with {@code lazy}, collapsed nodes
+	 * stop the walk and are left for the loader. Counts are set bottom-up and
+	 * depths relative to the top view, which TreeRoot shifts when attaching.
+	 */
+	private NodeView<T> build(int index, boolean lazy) {
+		NodeView<T> top = new NodeView<>(this, index);
+		ArrayList<TreeNode<T>> order = new ArrayList<>();
+		ArrayList<NodeView<T>> stack = new ArrayList<>();
+		stack.add(top);
+		while (!stack.isEmpty()) {
+			NodeView<T> view = stack.remove(stack.size() - 1);
+			order.add(view);
+			int first = firstChild[view.index];
+			if (first == NONE)
+				continue;
+			if (lazy && !view.expanded) {
+				view.setLazy(true);
+				continue;
+			}
+			TreeRoot<T> children = view.getChildren();
+			for (int child = first; child != NONE; child = nextSibling[child]) {
+				NodeView<T> childView = new NodeView<>(this, child);
+				childView.depth = view.depth + 1;
+				children.appendDetached(childView);
+			}
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.add((NodeView<T>) children.get(i));
+			}
+		}
+		TreeBulk.computeCounts(order);
+		return top;
+	}
+}
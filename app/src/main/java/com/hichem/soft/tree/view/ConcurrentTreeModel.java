@@ -0,0 +1,491 @@
+package com.hichem.soft.tree.view;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tree model shared between writer threads and readers. Writers apply
+ * batches of edits one at a time; each batch copies only the paths from the
+ * top to the nodes it touches and then publishes a new immutable
+ * {@link Snapshot}. Readers take the current snapshot without locking and
+ * can walk it for as long as they like while writers keep going.
+ *
+ * <p>Nodes are addressed by ids the model assigns. To show the tree, pass
+ * snapshots to {@link TreeViewAdapter#submitSnapshot} on the main thread;
+ * the adapter converts and diffs them in the background, and its own nodes
+ * are never touched by the writers.
+ */
+public class ConcurrentTreeModel<T> {
+
+	/** Parent id of top-level nodes */
+	public static final long ROOT = 0;
+
+	public interface Batch<T> {
+		void apply(Editor<T> editor);
+	}
+
+	public interface Listener<T> {
+		/**
+		 * Called on the writer thread after each published batch, in version
+		 * order, while the write lock is held; post the work elsewhere
+		 */
+		void onSnapshot(Snapshot<T> snapshot);
+	}
+
+	private final Object writeLock = new Object();
+	private final ArrayList<Listener<T>> listeners = new ArrayList<>();
+	private volatile Snapshot<T> snapshot;
+
+	// Writer state, guarded by writeLock
+	private final HashMap<Long, Long> parentOf = new HashMap<>();
+	private long nextId = ROOT + 1;
+
+	public ConcurrentTreeModel() {
+		snapshot = new Snapshot<>(new Node<T>(ROOT, null, null), 0, 0);
+	}
+
+	/** The latest published snapshot; never blocks */
+	public Snapshot<T> snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Runs the batch under the write lock and publishes its result as one
+	 * snapshot. If the batch throws, none of its edits are published.
+	 */
+	public Snapshot<T> apply(Batch<T> batch) {
+		synchronized (writeLock) {
+			Editor<T> editor = new Editor<>(this, snapshot.root);
+			try {
+				batch.apply(editor);
+			} catch (RuntimeException | Error e) {
+				editor.rollback();
+				throw e;
+			} finally {
+				editor.closed = true;
+			}
+			if (!editor.changed)
+				return snapshot;
+			Snapshot<T> published = new Snapshot<>(editor.root, snapshot.version + 1, parentOf.size());
+			snapshot = published;
+			for (Listener<T> listener : listeners) {
+				listener.onSnapshot(published);
+			}
+			return published;
+		}
+	}
+
+	public void addListener(Listener<T> listener) {
+		synchronized (writeLock) {
+			listeners.add(listener);
+		}
+	}
+
+	public void removeListener(Listener<T> listener) {
+		synchronized (writeLock) {
+			listeners.remove(listener);
+		}
+	}
+
+	// === Nodes and snapshots ===
+
+	/** Immutable once published */
+	public static final class Node<T> {
+		final long id;
+		T data;
+		boolean expanded;
+		int iconResId = -1;
+		int barColor = -1;
+		Object[] children;
+		int childCount;
+		// Batch that may still edit this node in place; a batch's token ends with it
+		Object owner;
+
+		Node(long id, T data, Object owner) {
+			this.id = id;
+			this.data = data;
+			this.owner = owner;
+			this.children = new Object[0];
+		}
+
+		Node<T> copy(Object owner) {
+			Node<T> copy = new Node<>(id, data, owner);
+			copy.expanded = expanded;
+			copy.iconResId = iconResId;
+			copy.barColor = barColor;
+			copy.children = Arrays.copyOf(children, childCount);
+			copy.childCount = childCount;
+			return copy;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public T getData() {
+			return data;
+		}
+
+		public boolean isExpanded() {
+			return expanded;
+		}
+
+		public int getIconResId() {
+			return iconResId;
+		}
+
+		public int getBarColor() {
+			return barColor;
+		}
+
+		public int getChildCount() {
+			return childCount;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Node<T> getChild(int position) {
+			if (position < 0 || position >= childCount)
+				throw new IndexOutOfBoundsException("position " + position + ", size " + childCount);
+			return (Node<T>) children[position];
+		}
+
+		/** Read-only view of the children */
+		public List<Node<T>> getChildren() {
+			return new AbstractList<Node<T>>() {
+				@Override
+				public Node<T> get(int position) {
+					return getChild(position);
+				}
+
+				@Override
+				public int size() {
+					return childCount;
+				}
+			};
+		}
+
+		int indexOf(long childId) {
+			for (int i = 0; i < childCount; i++) {
+				if (((Node<?>) children[i]).id == childId)
+					return i;
+			}
+			return -1;
+		}
+
+		void insert(int position, Node<T> child) {
+			if (childCount == children.length)
+				children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+			System.arraycopy(children, position, children, position + 1, childCount - position);
+			children[position] = child;
+			childCount++;
+		}
+
+		@SuppressWarnings("unchecked")
+		Node<T> removeAt(int position) {
+			Node<T> child = (Node<T>) children[position];
+			System.arraycopy(children, position + 1, children, position, childCount - position - 1);
+			children[--childCount] = null;
+			return child;
+		}
+
+		@Override
+		public String toString() {
+			return data != null ? data.toString() : "(null)";
+		}
+	}
+
+	/** A consistent, immutable state of the tree */
+	public static final class Snapshot<T> {
+		final Node<T> root;
+		final long version;
+		final int nodeCount;
+
+		Snapshot(Node<T> root, long version, int nodeCount) {
+			this.root = root;
+			this.version = version;
+			this.nodeCount = nodeCount;
+		}
+
+		public List<Node<T>> getRoots() {
+			return root.getChildren();
+		}
+
+		/** Incremented by every published batch */
+		public long getVersion() {
+			return version;
+		}
+
+		public int getNodeCount() {
+			return nodeCount;
+		}
+
+		/**
+		 * Builds a TreeRoot with the snapshot's data and flags, for the
+		 * adapter. Costs O(nodes) and may run on any thread.
+		 */
+		public TreeRoot<T> toTreeRoot() {
+			TreeRoot<T> roots = new TreeRoot<>();
+			ArrayList<TreeNode<T>> order = new ArrayList<>(nodeCount);
+			ArrayList<Node<T>> stack = new ArrayList<>();
+			ArrayList<TreeRoot<T>> targets = new ArrayList<>();
+			stack.add(root);
+			targets.add(null);
+			while (!stack.isEmpty()) {
+				Node<T> node = stack.remove(stack.size() - 1);
+				TreeRoot<T> target = targets.remove(targets.size() - 1);
+				TreeRoot<T> children = roots;
+				if (node != root) {
+					TreeNode<T> copy = new TreeNode<>(node.data);
+					copy.expanded = node.expanded;
+					copy.iconResId = node.iconResId;
+					copy.barColor = node.barColor;
+					target.appendDetached(copy);
+					copy.depth = copy.parent != null ? copy.parent.depth + 1 : 0;
+					order.add(copy);
+					children = copy.getChildren();
+				}
+				for (int i = node.childCount - 1; i >= 0; i--) {
+					stack.add(node.getChild(i));
+					targets.add(children);
+				}
+			}
+			TreeBulk.computeCounts(order);
+			return roots;
+		}
+	}
+
+	// === Editing ===
+
+	/** Edits within one batch; only valid inside {@link Batch#apply} */
+	public static final class Editor<T> {
+		private final ConcurrentTreeModel<T> model;
+		private final Object token = new Object();
+		private Node<T> root;
+		private boolean changed;
+		private boolean closed;
+		// Nodes this batch already copied; their ancestors are copied too
+		private final HashMap<Long, Node<T>> owned = new HashMap<>();
+		// Parent entries as they were before the batch, null if absent
+		private final HashMap<Long, Long> undo = new HashMap<>();
+		private final long firstId;
+
+		Editor(ConcurrentTreeModel<T> model, Node<T> root) {
+			this.model = model;
+			this.root = root;
+			this.firstId = model.nextId;
+		}
+
+		public boolean contains(long id) {
+			return id == ROOT || model.parentOf.containsKey(id);
+		}
+
+		/** Appends a node under the parent (ROOT for top level) and returns its id */
+		public long add(long parentId, T data) {
+			return insert(parentId, -1, data);
+		}
+
+		/** Inserts a node at the position, or at the end if position is -1 */
+		public long insert(long parentId, int position, T data) {
+			Node<T> parent = mutable(parentId);
+			long id = model.nextId++;
+			Node<T> node = new Node<>(id, data, token);
+			parent.insert(checkPosition(parent, position), node);
+			setParent(id, parentId);
+			owned.put(id, node);
+			return id;
+		}
+
+		/** Copies a TreeNode subtree under the parent; returns the id of its top node */
+		public long addSubtree(long parentId, TreeNode<T> subtree) {
+			Node<T> parent = mutable(parentId);
+			ArrayList<TreeNode<T>> stack = new ArrayList<>();
+			ArrayList<Node<T>> targets = new ArrayList<>();
+			stack.add(subtree);
+			targets.add(parent);
+			long top = -1;
+			while (!stack.isEmpty()) {
+				TreeNode<T> source = stack.remove(stack.size() - 1);
+				Node<T> target = targets.remove(targets.size() - 1);
+				long id = model.nextId++;
+				Node<T> node = new Node<>(id, source.data, token);
+				node.expanded = source.expanded;
+				node.iconResId = source.iconResId;
+				node.barColor = source.barColor;
+				target.insert(target.childCount, node);
+				setParent(id, target.id);
+				owned.put(id, node);
+				if (top < 0)
+					top = id;
+				TreeRoot<T> children = source.getChildren();
+				for (int i = children.size() - 1; i >= 0; i--) {
+					stack.add(children.get(i));
+					targets.add(node);
+				}
+			}
+			return top;
+		}
+
+		/** Removes the node and its subtree */
+		public void remove(long id) {
+			checkChild(id);
+			long parentId = model.parentOf.get(id);
+			Node<T> parent = mutable(parentId);
+			Node<T> removed = parent.removeAt(parent.indexOf(id));
+			ArrayList<Node<T>> stack = new ArrayList<>();
+			stack.add(removed);
+			while (!stack.isEmpty()) {
+				Node<T> node = stack.remove(stack.size() - 1);
+				setParent(node.id, null);
+				owned.remove(node.id);
+				for (int i = 0; i < node.childCount; i++) {
+					stack.add(node.getChild(i));
+				}
+			}
+		}
+
+		/** Moves the node under a new parent at the position, or at the end if -1 */
+		public void move(long id, long newParentId, int position) {
+			checkChild(id);
+			checkNode(newParentId);
+			for (long p = newParentId; p != ROOT; p = parentOf(p)) {
+				if (p == id)
+					throw new IllegalArgumentException("Cannot move a node into its own subtree");
+			}
+			long oldParentId = model.parentOf.get(id);
+			Node<T> oldParent = mutable(oldParentId);
+			Node<T> node = oldParent.removeAt(oldParent.indexOf(id));
+			Node<T> newParent = mutable(newParentId);
+			newParent.insert(checkPosition(newParent, position), node);
+			setParent(id, newParentId);
+		}
+
+		public T getData(long id) {
+			checkNode(id);
+			Node<T> node = owned.get(id);
+			return node != null ? node.data : find(id).data;
+		}
+
+		public void setData(long id, T data) {
+			checkNode(id);
+			mutable(id).data = data;
+		}
+
+		public void setExpanded(long id, boolean expanded) {
+			checkNode(id);
+			mutable(id).expanded = expanded;
+		}
+
+		public void setIconResId(long id, int resId) {
+			checkNode(id);
+			mutable(id).iconResId = resId;
+		}
+
+		public void setBarColor(long id, int color) {
+			checkNode(id);
+			mutable(id).barColor = color;
+		}
+
+		// === Path copying ===
+
+		/** Returns this batch's copy of the node, copying the path to it first */
+		private Node<T> mutable(long id) {
+			if (closed)
+				throw new IllegalStateException("Batch is over");
+			changed = true;
+			if (root.owner != token) {
+				root = root.copy(token);
+				owned.put(ROOT, root);
+			}
+			Node<T> node = owned.get(id);
+			if (node != null)
+				return node;
+			checkNode(id);
+
+			// Climb to the nearest copied ancestor, then copy down from it
+			ArrayList<Long> path = new ArrayList<>();
+			long current = id;
+			Node<T> parent;
+			while ((parent = owned.get(current)) == null) {
+				path.add(current);
+				current = parentOf(current);
+			}
+			for (int i = path.size() - 1; i >= 0; i--) {
+				long childId = path.get(i);
+				int position = parent.indexOf(childId);
+				Node<T> copy = parent.getChild(position).copy(token);
+				parent.children[position] = copy;
+				owned.put(childId, copy);
+				parent = copy;
+			}
+			return parent;
+		}
+
+		/** Finds the node in the current state without copying it */
+		private Node<T> find(long id) {
+			ArrayList<Long> path = new ArrayList<>();
+			for (long p = id; p != ROOT; p = parentOf(p)) {
+				path.add(p);
+			}
+			Node<T> node = root;
+			for (int i = path.size() - 1; i >= 0; i--) {
+				node = node.getChild(node.indexOf(path.get(i)));
+			}
+			return node;
+		}
+
+		private long parentOf(long id) {
+			Long parent = model.parentOf.get(id);
+			if (parent == null)
+				throw new IllegalArgumentException("No node with id " + id);
+			return parent;
+		}
+
+		private void setParent(long id, Long parentId) {
+			if (id < firstId && !undo.containsKey(id))
+				undo.put(id, model.parentOf.get(id));
+			if (parentId != null)
+				model.parentOf.put(id, parentId);
+			else
+				model.parentOf.remove(id);
+		}
+
+		private void checkNode(long id) {
+			if (closed)
+				throw new IllegalStateException("Batch is over");
+			if (!contains(id))
+				throw new IllegalArgumentException("No node with id " + id);
+		}
+
+		private void checkChild(long id) {
+			if (id == ROOT)
+				throw new IllegalArgumentException("The root cannot be removed or moved");
+			checkNode(id);
+		}
+
+		private static int checkPosition(Node<?> parent, int position) {
+			if (position == -1)
+				return parent.childCount;
+			if (position < 0 || position > parent.childCount)
+				throw new IndexOutOfBoundsException("position " + position + ", size " + parent.childCount);
+			return position;
+		}
+
+		/** Forgets the batch: published nodes were never touched, only the id map was */
+		void rollback() {
+			for (long id = firstId; id < model.nextId; id++) {
+				model.parentOf.remove(id);
+			}
+			for (Map.Entry<Long, Long> entry : undo.entrySet()) {
+				if (entry.getValue() != null)
+					model.parentOf.put(entry.getKey(), entry.getValue());
+				else
+					model.parentOf.remove(entry.getKey());
+			}
+			changed = false;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.hichem.soft.tree.view;
+
+import android.graphics.Paint;
+import android.text.TextPaint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Formatted and measured label of each node, kept on the node itself so a
+ * lookup is a field read. An entry stays valid until the node's data is
+ * replaced or {@link TreeNode#setData} is called, so rebinding a row does not
+ * format or measure its text again. {@link #prefetch} fills entries on a
+ * background thread, e.g. for rows about to scroll into view.
+ *
+ * <p>A node holds one entry, so views showing the same tree should share a
+ * cache. If the formatter reads state other than the data, call
+ * {@link #invalidate} or {@link #invalidateAll} when that state changes.
+ */
+public class DisplayTextCache<T> {
+
+	/** Immutable, so a background thread can publish it without locking */
+	static final class Entry {
+		final DisplayTextCache<?> owner;
+		final int generation;
+		final Object data;
+		final int dataVersion;
+		final String text;
+		final float width;
+
+		Entry(DisplayTextCache<?> owner, int generation, Object data, int dataVersion, String text, float width) {
+			this.owner = owner;
+			this.generation = generation;
+			this.data = data;
+			this.dataVersion = dataVersion;
+			this.text = text;
+			this.width = width;
+		}
+	}
+
+	private final ObjectTreeAdapter.Formatter<T> formatter;
+	// Own copy, measured from any thread; the style's paint belongs to the UI thread
+	private final TextPaint paint;
+	private volatile int generation;
+
+	/** Measures with a copy of the paint; make a new cache when the paint changes */
+	public DisplayTextCache(ObjectTreeAdapter.Formatter<T> formatter, Paint paint) {
+		this.formatter = formatter;
+		this.paint = new TextPaint(paint);
+	}
+
+	public String getText(TreeNode<T> node) {
+		return entry(node).text;
+	}
+
+	/** Width of the text as drawn with the paint */
+	public float getWidth(TreeNode<T> node) {
+		return entry(node).width;
+	}
+
+	/** Drops the node's entry, e.g. after its data was changed in place */
+	public void invalidate(TreeNode<T> node) {
+		Object cached = node.displayText;
+		if (cached instanceof Entry && ((Entry) cached).owner == this)
+			node.displayText = null;
+	}
+
+	/** Drops every entry without walking the tree; they are replaced as they are read */
+	public void invalidateAll() {
+		generation++;
+	}
+
+	/**
+	 * Formats and measures the nodes that have no valid entry on the
+	 * executor. Safe while the UI thread binds rows: both may compute the same
+	 * entry, and either result is correct. Cancel the future to stop early.
+	 */
+	public Future<?> prefetch(List<TreeNode<T>> nodes, ExecutorService executor) {
+		final ArrayList<TreeNode<T>> copy = new ArrayList<>(nodes);
+		return executor.submit(() -> {
+			for (TreeNode<T> node : copy) {
+				if (Thread.currentThread().isInterrupted())
+					return;
+				entry(node);
+			}
+		});
+	}
+
+	Entry entry(TreeNode<T> node) {
+		Object cached = node.displayText;
+		T data = node.data;
+		int version = node.dataVersion;
+		if (cached instanceof Entry) {
+			Entry entry = (Entry) cached;
+			if (entry.owner == this && entry.generation == generation && entry.data == data && entry.dataVersion == version)
+				return entry;
+		}
+		int current = generation;
+		String text = formatter != null ? formatter.getDisplayText(data) : String.valueOf(data);
+		float width;
+		synchronized (paint) {
+			width = paint.measureText(text);
+		}
+		Entry entry = new Entry(this, current, data, version, text, width);
+		node.displayText = entry;
+		return entry;
+	}
+}
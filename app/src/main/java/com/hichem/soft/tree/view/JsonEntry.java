@@ -0,0 +1,133 @@
+package com.hichem.soft.tree.view;
+
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Objects;
+
+/**
+ * Data of a node in a JSON tree from {@link TreeUtils#fromAnyJson} or
+ * {@link TreeJsonStream#readAny}: the member name, the JSON type and, for
+ * primitives, the value itself. {@code toString()} gives the same
+ * {@code "key: value"} label the string-based trees use, but
+ * {@link TreeUtils#toAnyJson} writes the value as it is, without parsing the
+ * label back. Array elements are keyed {@code [index]}.
+ */
+public final class JsonEntry {
+
+	public static final int OBJECT = 0;
+	public static final int ARRAY = 1;
+	public static final int STRING = 2;
+	public static final int NUMBER = 3;
+	public static final int BOOLEAN = 4;
+	public static final int NULL = 5;
+
+	final String key;
+	final int type;
+	final Object value;
+
+	private JsonEntry(String key, int type, Object value) {
+		this.key = key;
+		this.type = type;
+		this.value = value;
+	}
+
+	public static JsonEntry object(String key) {
+		return new JsonEntry(key, OBJECT, null);
+	}
+
+	public static JsonEntry array(String key) {
+		return new JsonEntry(key, ARRAY, null);
+	}
+
+	/** A primitive: a String, Number or Boolean, or null (org.json's NULL also counts as null) */
+	public static JsonEntry of(String key, Object value) {
+		if (value == null || value == JSONObject.NULL)
+			return new JsonEntry(key, NULL, null);
+		if (value instanceof String)
+			return new JsonEntry(key, STRING, value);
+		if (value instanceof Number)
+			return new JsonEntry(key, NUMBER, value);
+		if (value instanceof Boolean)
+			return new JsonEntry(key, BOOLEAN, value);
+		throw new IllegalArgumentException("Not a JSON primitive: " + value.getClass().getName());
+	}
+
+	/** The entry behind node data, or null if the data is not typed */
+	static JsonEntry from(Object data) {
+		if (data instanceof JsonEntry)
+			return (JsonEntry) data;
+		if (data instanceof LazyJsonTree.Value)
+			return ((LazyJsonTree.Value) data).toEntry();
+		return null;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/** One of the type constants */
+	public int getType() {
+		return type;
+	}
+
+	public boolean isContainer() {
+		return type == OBJECT || type == ARRAY;
+	}
+
+	/** The String, Number or Boolean; null for null and for containers */
+	public Object getValue() {
+		return value;
+	}
+
+	/**
+	 * Parses a JSON number literal to the narrowest exact type: Integer, Long
+	 * or BigInteger, and Double or, past 15 significant digits, BigDecimal.
+	 */
+	static Number parseNumber(String text) {
+		boolean integral = true;
+		int digits = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (digits > 0 || c != '0')
+					digits++;
+			} else if (c == '.' || c == 'e' || c == 'E') {
+				integral = false;
+				if (c != '.')
+					break;
+			} else if (c != '-' && c != '+') {
+				// NaN or Infinity from a lenient reader
+				return Double.valueOf(text);
+			}
+		}
+		if (integral) {
+			if (digits > 18)
+				return new BigInteger(text);
+			long value = Long.parseLong(text);
+			if (value == (int) value)
+				return (int) value;
+			return value;
+		}
+		return digits > 15 ? new BigDecimal(text) : Double.valueOf(text);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof JsonEntry))
+			return false;
+		JsonEntry entry = (JsonEntry) other;
+		return type == entry.type && Objects.equals(key, entry.key) && Objects.equals(value, entry.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(key, type, value);
+	}
+
+	@Override
+	public String toString() {
+		return isContainer() ? key : key + ": " + value;
+	}
+}
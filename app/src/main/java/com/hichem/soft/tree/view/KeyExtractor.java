@@ -0,0 +1,9 @@
+package com.hichem.soft.tree.view;
+
+/**
+ * Extracts a stable identity key from node data, such as a database id.
+ * Keys must implement equals/hashCode and should be unique within a tree.
+ */
+public interface KeyExtractor<T> {
+	Object keyOf(T data);
+}
@@ -0,0 +1,353 @@
+package com.hichem.soft.tree.view;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A JSON document as a tree that is only parsed where it is looked at. The
+ * tree has the same shape and labels as {@link TreeUtils#fromAnyJson}, but
+ * objects and arrays start as lazy nodes whose members are read by
+ * {@link #childLoader} when they are expanded, and a node's data is a
+ * {@link Value} pointing into the document, whose label is built by
+ * {@code toString()} when the row is drawn. Opening a document costs nothing
+ * but the mapping or reading of its bytes.
+ *
+ * <p>The bytes must be UTF-8 and must not change while the tree is in use.
+ * Malformed JSON is only noticed where it is read, as an
+ * IllegalArgumentException from the loader.
+ */
+public class LazyJsonTree {
+
+	/** Data of a node: where its key and value are in the document */
+	public static final class Value {
+		final LazyJsonTree doc;
+		// Opening quote of the member name, -1 for array elements and the top value
+		final int keyStart;
+		// Position in the enclosing array, -1 otherwise
+		final int index;
+		// First byte of the value
+		final int start;
+		// Where the member after the last loaded page starts, kept by the loader
+		int resumeAt = -1;
+		int resumeIndex;
+
+		Value(LazyJsonTree doc, int keyStart, int index, int start) {
+			this.doc = doc;
+			this.keyStart = keyStart;
+			this.index = index;
+			this.start = start;
+		}
+
+		/** True for an object or array */
+		public boolean isContainer() {
+			byte b = doc.buffer.get(start);
+			return b == '{' || b == '[';
+		}
+
+		/** Member name, {@code [index]} for array elements, or root / array at the top */
+		public String getKey() {
+			if (keyStart >= 0)
+				return doc.readString(keyStart);
+			if (index >= 0)
+				return "[" + index + "]";
+			return doc.buffer.get(start) == '[' ? "array" : "root";
+		}
+
+		/** The value as text: strings unescaped, other primitives as written; null for containers */
+		public String getText() {
+			return isContainer() ? null : doc.readPrimitive(start);
+		}
+
+		/** The typed entry fromAnyJson would give the node, e.g. for writing it out */
+		public JsonEntry toEntry() {
+			byte b = doc.buffer.get(start);
+			String key = getKey();
+			if (b == '{')
+				return JsonEntry.object(key);
+			if (b == '[')
+				return JsonEntry.array(key);
+			if (b == '"')
+				return JsonEntry.of(key, doc.readString(start));
+			String text = getText();
+			switch (text) {
+				case "true":
+					return JsonEntry.of(key, Boolean.TRUE);
+				case "false":
+					return JsonEntry.of(key, Boolean.FALSE);
+				case "null":
+					return JsonEntry.of(key, null);
+				default:
+					return JsonEntry.of(key, JsonEntry.parseNumber(text));
+			}
+		}
+
+		/** The label fromAnyJson would give the node: the key, with {@code ": value"} for primitives */
+		@Override
+		public String toString() {
+			if (isContainer())
+				return getKey();
+			if (keyStart < 0 && index < 0)
+				return getText();
+			return getKey() + ": " + getText();
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final int end;
+
+	/** Reads the document from the buffer's position to its limit */
+	public LazyJsonTree(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+		this.end = this.buffer.limit();
+	}
+
+	/** Maps the file read-only; the mapping outlives the closed file */
+	public static LazyJsonTree open(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			return new LazyJsonTree(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/** Reads the stream's bytes into memory without parsing them; the stream is not closed */
+	public static LazyJsonTree read(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[64 * 1024];
+		int n;
+		while ((n = in.read(chunk)) > 0) {
+			bytes.write(chunk, 0, n);
+		}
+		return new LazyJsonTree(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	public static LazyJsonTree of(String json) {
+		return new LazyJsonTree(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	// === Tree ===
+
+	/** The top node, lazy if the document is a non-empty object or array */
+	public TreeNode<Object> root() {
+		int pos = 0;
+		// UTF-8 byte order mark
+		if (end >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF)
+			pos = 3;
+		pos = skipWhitespace(pos);
+		if (pos >= end)
+			return new TreeNode<>("");
+		return node(new Value(this, -1, -1, pos));
+	}
+
+	/** Loads the members of lazy nodes from this document, continuing where the last page ended */
+	public ChildLoader<Object> childLoader() {
+		return (parent, offset, limit) -> {
+			if (parent.data instanceof Value && ((Value) parent.data).doc == this)
+				return loadChildren((Value) parent.data, offset, limit);
+			return new ArrayList<>();
+		};
+	}
+
+	/**
+	 * Loads everything under the node that is still lazy, e.g. before
+	 * {@link TreeUtils#toAnyJson} or a search over the whole document.
+	 */
+	public void loadAll(TreeNode<Object> node) {
+		ArrayList<TreeNode<Object>> stack = new ArrayList<>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			TreeNode<Object> next = stack.remove(stack.size() - 1);
+			if (next.isLazy() && next.data instanceof Value && ((Value) next.data).doc == this) {
+				next.addChildren(loadChildren((Value) next.data, next.getChildCount(), Integer.MAX_VALUE));
+				next.setLazy(false);
+			}
+			stack.addAll(next.getChildren());
+		}
+	}
+
+	private TreeNode<Object> node(Value value) {
+		TreeNode<Object> node = new TreeNode<>(value);
+		if (value.isContainer()) {
+			byte first = byteAt(skipWhitespace(value.start + 1));
+			node.setLazy(first != '}' && first != ']');
+		}
+		return node;
+	}
+
+	private List<TreeNode<Object>> loadChildren(Value parent, int offset, int limit) {
+		ArrayList<TreeNode<Object>> page = new ArrayList<>();
+		synchronized (parent) {
+			boolean array = byteAt(parent.start) == '[';
+			int pos;
+			int index;
+			if (parent.resumeAt >= 0 && parent.resumeIndex == offset) {
+				pos = parent.resumeAt;
+				index = offset;
+			} else {
+				pos = parent.start + 1;
+				index = 0;
+			}
+			while (page.size() < limit) {
+				pos = skipWhitespace(pos);
+				byte b = byteAt(pos);
+				if (b == '}' || b == ']')
+					break;
+				if (index > 0) {
+					if (b != ',')
+						throw malformed(pos);
+					pos = skipWhitespace(pos + 1);
+				}
+				int keyStart = -1;
+				if (!array) {
+					if (byteAt(pos) != '"')
+						throw malformed(pos);
+					keyStart = pos;
+					pos = skipWhitespace(skipString(pos));
+					if (byteAt(pos) != ':')
+						throw malformed(pos);
+					pos = skipWhitespace(pos + 1);
+				}
+				int start = pos;
+				pos = skipValue(pos);
+				if (index >= offset)
+					page.add(node(new Value(this, keyStart, array ? index : -1, start)));
+				index++;
+			}
+			parent.resumeAt = pos;
+			parent.resumeIndex = index;
+		}
+		return page;
+	}
+
+	// === Scanning ===
+
+	private byte byteAt(int pos) {
+		if (pos >= end)
+			throw malformed(pos);
+		return buffer.get(pos);
+	}
+
+	private int skipWhitespace(int pos) {
+		while (pos < end) {
+			byte b = buffer.get(pos);
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+				break;
+			pos++;
+		}
+		return pos;
+	}
+
+	/** Position after the string whose opening quote is at pos */
+	private int skipString(int pos) {
+		pos++;
+		while (true) {
+			byte b = byteAt(pos++);
+			if (b == '"')
+				return pos;
+			if (b == '\\')
+				pos++;
+		}
+	}
+
+	/** Position after the value starting at pos, without decoding anything */
+	private int skipValue(int pos) {
+		byte b = byteAt(pos);
+		if (b == '"')
+			return skipString(pos);
+		if (b == '{' || b == '[') {
+			int depth = 0;
+			while (true) {
+				b = byteAt(pos);
+				if (b == '"') {
+					pos = skipString(pos);
+					continue;
+				}
+				if (b == '{' || b == '[') {
+					depth++;
+				} else if ((b == '}' || b == ']') && --depth == 0) {
+					return pos + 1;
+				}
+				pos++;
+			}
+		}
+		// Number, true, false or null
+		while (pos < end) {
+			b = buffer.get(pos);
+			if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t')
+				break;
+			pos++;
+		}
+		return pos;
+	}
+
+	private String readPrimitive(int pos) {
+		if (byteAt(pos) == '"')
+			return readString(pos);
+		return decode(pos, skipValue(pos));
+	}
+
+	/** The unescaped string whose opening quote is at pos */
+	String readString(int pos) {
+		String text = decode(pos + 1, skipString(pos) - 1);
+		return text.indexOf('\\') < 0 ? text : unescape(text);
+	}
+
+	private String decode(int from, int to) {
+		byte[] bytes = new byte[to - from];
+		ByteBuffer view = buffer.duplicate();
+		view.position(from);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static String unescape(String text) {
+		StringBuilder out = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c != '\\' || i + 1 >= text.length()) {
+				out.append(c);
+				continue;
+			}
+			c = text.charAt(++i);
+			switch (c) {
+				case 'b':
+					out.append('\b');
+					break;
+				case 'f':
+					out.append('\f');
+					break;
+				case 'n':
+					out.append('\n');
+					break;
+				case 'r':
+					out.append('\r');
+					break;
+				case 't':
+					out.append('\t');
+					break;
+				case 'u':
+					if (i + 4 < text.length()) {
+						out.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+						i += 4;
+						break;
+					}
+					out.append(c);
+					break;
+				default:
+					// \" \\ \/ and anything unknown stand for the character itself
+					out.append(c);
+			}
+		}
+		return out.toString();
+	}
+
+	private IllegalArgumentException malformed(int pos) {
+		return new IllegalArgumentException("Malformed JSON at byte " + pos);
+	}
+}
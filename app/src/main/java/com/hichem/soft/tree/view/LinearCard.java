@@ -1,7 +1,5 @@
 package com.hichem.soft.tree.view;
 
-package com.sketchware.doctor.ui.custom;
-
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -19,7 +17,7 @@ public class LinearCard extends LinearLayout {
 	private int cardColor = Color.WHITE;
 	private float cornerRadius = 24f;
 	private float elevation = 6f;
-	private int shadowColor = Color.argb(80, 0, 0, 0);
+	private int shadowColor = TreeStyle.SHADOW_COLOR;
 
 	public LinearCard(Context context) {
 		super(context);
@@ -32,10 +30,14 @@ public class LinearCard extends LinearLayout {
 		setPadding(32, 24, 32, 24);
 		setLayoutParams(new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
 		setBackgroundColor(Color.TRANSPARENT);
+		shadowPaint.setStyle(Paint.Style.FILL);
+		shadowPaint.setColor(shadowColor);
+		backgroundPaint.setColor(cardColor);
 	}
 
 	public void setCardBackgroundColor(int color) {
 		this.cardColor = color;
+		backgroundPaint.setColor(color);
 		invalidate();
 	}
 
@@ -51,6 +53,7 @@ public class LinearCard extends LinearLayout {
 
 	public void setShadowColor(int color) {
 		this.shadowColor = color;
+		shadowPaint.setColor(color);
 		invalidate();
 	}
 
@@ -66,12 +69,9 @@ public class LinearCard extends LinearLayout {
 		);
 
 		// Shadow
-		shadowPaint.setColor(shadowColor);
-		shadowPaint.setStyle(Paint.Style.FILL);
 		canvas.drawRoundRect(rect, cornerRadius, cornerRadius, shadowPaint);
 
 		// Background
-		backgroundPaint.setColor(cardColor);
 		canvas.drawRoundRect(rect, cornerRadius, cornerRadius, backgroundPaint);
 	}
 }
\ No newline at end of file
@@ -12,8 +12,8 @@ import java.util.List;
 public class LinearRow extends LinearLayout {
 
 	private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-	private final TreeNode<?> node;
-	private final int level;
+	private TreeNode<?> node;
+	private int level;
 
 	private static final int BASE_PADDING = 24;
 	private static final int LEVEL_SPACING = 20;
@@ -36,10 +36,17 @@ public class LinearRow extends LinearLayout {
 
 	private void init() {
 		setWillNotDraw(false);
-		linePaint.setColor(Color.parseColor("#BBBBBB"));
+		linePaint.setColor(TreeStyle.LINE_COLOR);
 		linePaint.setStrokeWidth(4f);
 	}
 
+	/** Points this row at another node, used when the row is recycled */
+	public void bind(TreeNode<?> node, int level) {
+		this.node = node;
+		this.level = level;
+		invalidate();
+	}
+
 	public LinearRow setLineColor(int clr) {
 		lineColor = clr;
 		linePaint.setColor(lineColor);
@@ -0,0 +1,101 @@
+package com.hichem.soft.tree.view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Key to node map shared by every TreeRoot of one tree. TreeRoot keeps it up
+ * to date as nodes are added and removed.
+ */
+class NodeIndex<T> {
+
+	final TreeRoot<T> root;
+	private final KeyExtractor<T> extractor;
+	private final HashMap<Object, TreeNode<T>> nodes = new HashMap<>();
+	// Other nodes sharing a key with the one in nodes, for keys that are not unique
+	private final HashMap<Object, ArrayList<TreeNode<T>>> duplicates = new HashMap<>();
+
+	NodeIndex(TreeRoot<T> root, KeyExtractor<T> extractor) {
+		this.root = root;
+		this.extractor = extractor;
+	}
+
+	Object keyOf(T data) {
+		return extractor.keyOf(data);
+	}
+
+	TreeNode<T> get(Object key) {
+		return nodes.get(key);
+	}
+
+	/** Registers the node and its descendants, and shares the index with them */
+	void addSubtree(TreeNode<T> node) {
+		ArrayList<TreeNode<T>> stack = new ArrayList<>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			TreeNode<T> next = stack.remove(stack.size() - 1);
+			if (next.placeholder)
+				continue;
+			put(keyOf(next.data), next);
+			TreeRoot<T> children = next.getChildren();
+			children.index = this;
+			// Reversed, so nodes are visited in pre-order and a later duplicate key still wins
+			for (int i = children.size() - 1; i >= 0; i--) {
+				stack.add(children.get(i));
+			}
+		}
+	}
+
+	/** Unregisters the node and its descendants */
+	void removeSubtree(TreeNode<T> node) {
+		ArrayList<TreeNode<T>> stack = new ArrayList<>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			TreeNode<T> next = stack.remove(stack.size() - 1);
+			remove(keyOf(next.data), next);
+			TreeRoot<T> children = next.getChildren();
+			children.index = null;
+			stack.addAll(children);
+		}
+	}
+
+	/** Moves the node to the key of its new data */
+	void rekey(TreeNode<T> node, T oldData, T newData) {
+		remove(keyOf(oldData), node);
+		put(keyOf(newData), node);
+	}
+
+	/** Maps the key to the node; a node already there stays findable once this one is removed */
+	private void put(Object key, TreeNode<T> node) {
+		TreeNode<T> old = nodes.put(key, node);
+		if (old == null || old == node)
+			return;
+		ArrayList<TreeNode<T>> others = duplicates.get(key);
+		if (others == null) {
+			others = new ArrayList<>(1);
+			duplicates.put(key, others);
+		}
+		others.add(old);
+	}
+
+	/** Unmaps the node, handing its key to the last other node with it */
+	private void remove(Object key, TreeNode<T> node) {
+		ArrayList<TreeNode<T>> others = duplicates.get(key);
+		if (nodes.get(key) == node) {
+			if (others == null) {
+				nodes.remove(key);
+				return;
+			}
+			nodes.put(key, others.remove(others.size() - 1));
+		} else if (others != null) {
+			for (int i = others.size() - 1; i >= 0; i--) {
+				if (others.get(i) == node) {
+					others.remove(i);
+					break;
+				}
+			}
+		}
+		if (others != null && others.isEmpty())
+			duplicates.remove(key);
+	}
+}
@@ -2,22 +2,13 @@ package com.hichem.soft.tree.view;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.graphics.Typeface;
-import android.view.Gravity;
-import android.view.View;
-import android.view.ViewGroup;
-import android.view.animation.AlphaAnimation;
-import android.widget.FrameLayout;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
-import android.widget.TextView;
-import android.content.Context;
-import android.graphics.Color;
-import android.graphics.Typeface;
-import android.graphics.drawable.GradientDrawable;
 import android.util.TypedValue;
 import android.view.Gravity;
+import android.view.View;
 import android.widget.TextView;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ObjectTreeAdapter<T> extends TreeViewAdapter<T> {
 
@@ -26,101 +17,108 @@ public class ObjectTreeAdapter<T> extends TreeViewAdapter<T> {
 	}
 
 	private final Formatter<T> formatter;
+	private TreeStyle style;
+	private DisplayTextCache<T> textCache;
+	private ExecutorService prefetchExecutor;
+	private Future<?> prefetchTask;
 
 	public ObjectTreeAdapter(Context ctx, TreeRoot<T> root, Formatter<T> formatter) {
 		super(ctx, root);
 		this.formatter = formatter;
+		this.style = new TreeStyle(ctx);
+		this.textCache = new DisplayTextCache<>(formatter, style.labelPaint);
 	}
 
-	@Override
-	protected View createView(Context ctx, TreeNode<T> node, int level) {
-
-		LinearCard card = new LinearCard(ctx);
-		card.setCornerRadius(16f);
-		card.setCardElevation(6f);
-		card.setCardBackgroundColor(Color.WHITE);
-		card.setPadding(0, 0, 0, 0);
-
-		AlphaAnimation anim = new AlphaAnimation(0.0f, 1.0f);
-		anim.setDuration(150);
-		card.startAnimation(anim);
-
-		LinearRow row = new LinearRow(ctx, node, level);
-		row.setOrientation(LinearLayout.HORIZONTAL);
-		row.setPadding(24 + level * 20, 16, 24, 16);
-		card.addView(row);
-
-		View leftBar = new View(ctx);
-		LinearLayout.LayoutParams barParams = new LinearLayout.LayoutParams(8, LinearLayout.LayoutParams.MATCH_PARENT);
-		barParams.setMarginEnd(8);
-		leftBar.setLayoutParams(barParams);
-		leftBar.setBackgroundColor(
-				node.barColor != -1 ? node.barColor : (node.isEmpty() ? Color.GRAY : Color.TRANSPARENT));
-		//row.addView(leftBar);
-
-		if (node.barColor != -1) {
-			if (node.isEmpty()) {
-				//	row.setLineColor(node.barColor);
-			}
-		}
-
-		//  content.addView(leftBar 
-
-		TextView arrowTv = new TextView(context);
-		arrowTv.setTextSize(16);
-		arrowTv.setTypeface(null, Typeface.BOLD);
-		arrowTv.setTextColor(node.expanded ? Color.LTGRAY : Color.DKGRAY);
-
-		ImageView icon = new ImageView(ctx);
-		if (node.iconResId != -1) {
-			icon.setImageResource(node.iconResId);
-			icon.setVisibility(View.VISIBLE);
-		} else {
-			icon.setVisibility(View.GONE);
-		}
-		icon.setLayoutParams(new LinearLayout.LayoutParams(48, 48));
-
-		PrettyTextView label = new PrettyTextView(ctx);
-
-		String display = formatter != null ? formatter.getDisplayText(node.data) : String.valueOf(node.data);
+	public TreeStyle getStyle() {
+		return style;
+	}
 
-		label.setText(display);
+	/** Replaces the shared style; every row is rebuilt with it */
+	public void setStyle(TreeStyle style) {
+		this.style = style;
+		this.textCache = new DisplayTextCache<>(formatter, style.labelPaint);
+		refresh();
+	}
 
-		arrowTv.setText(node.isEmpty() ? " " : (node.expanded ? "  -" : "  +"));
+	/** Labels of the rows, formatted and measured once per data change */
+	public DisplayTextCache<T> getTextCache() {
+		return textCache;
+	}
 
-		//content.addView(arrowTv);
-		//content.addView(label);
+	/** Also formats the labels again, in case the formatter reads more than the data */
+	@Override
+	public void refresh() {
+		textCache.invalidateAll();
+		super.refresh();
+	}
 
-		row.addView(leftBar);
-		row.addView(icon);
-		row.addView(label);
-		row.addView(arrowTv);
+	@Override
+	public void notifyNodeChanged(TreeNode<T> node) {
+		textCache.invalidate(node);
+		super.notifyNodeChanged(node);
+	}
 
-		View divider = new View(ctx);
-		LinearLayout.LayoutParams dividerParams = new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT,
-				1);
-		dividerParams.setMargins(16, 0, 16, 0);
-		divider.setLayoutParams(dividerParams);
-		divider.setBackgroundColor(Color.parseColor("#CCCCCC"));
+	/**
+	 * Formats and measures the labels of all visible rows on a background
+	 * thread, so rows binding later, e.g. while the list scrolls, find them
+	 * ready. Replaces a prefetch still running.
+	 */
+	public void prefetchDisplayText() {
+		if (prefetchTask != null)
+			prefetchTask.cancel(true);
+		if (prefetchExecutor == null)
+			prefetchExecutor = Executors.newSingleThreadExecutor();
+		prefetchTask = textCache.prefetch(visibleNodes.snapshot(), prefetchExecutor);
+	}
 
-		//  card.addView(divider);
+	/** Also stops the prefetch thread */
+	@Override
+	public void release() {
+		super.release();
+		if (prefetchTask != null) {
+			prefetchTask.cancel(true);
+			prefetchTask = null;
+		}
+		if (prefetchExecutor != null) {
+			prefetchExecutor.shutdownNow();
+			prefetchExecutor = null;
+		}
+	}
 
-		card.setOnClickListener(v -> {
-			node.expanded = !node.expanded;
-			refresh();
-			if (listener != null)
-				listener.onNodeClick(node);
-		});
+	@Override
+	protected View createView(Context ctx, TreeNode<T> node, int level) {
+		TreeRowView row = new TreeRowView(ctx, style);
+		bindRow(row, node, level);
+		// Only new rows fade in; rebinding a row on screen must not flash it
+		style.fadeIn(row);
+		return row;
+	}
 
-		card.setOnLongClickListener(v -> {
-			if (listener != null) {
-				listener.onNodeLongClick(node);
-				return true;
-			}
-			return false;
-		});
+	@Override
+	protected View bindView(Context ctx, View convertView, TreeNode<T> node, int level) {
+		// Rows drawn with a replaced style are dropped, see setStyle
+		if (convertView instanceof TreeRowView && ((TreeRowView) convertView).getStyle() == style) {
+			bindRow((TreeRowView) convertView, node, level);
+			return convertView;
+		}
+		return createView(ctx, node, level);
+	}
 
-		return card;
+	private void bindRow(TreeRowView row, TreeNode<T> node, int level) {
+		TreeMetrics metrics = getMetrics();
+		long start = metrics != null ? System.nanoTime() : 0;
+		DisplayTextCache.Entry label = textCache.entry(node);
+		if (metrics != null)
+			metrics.addFormatNanos(System.nanoTime() - start);
+		String display = label.text;
+		row.bind(node, level, display, label.width, isExpanded(node));
+
+		VisibleNodeList.Filter<T> filter = getFilter();
+		if (filter instanceof TreeSearch.Result && ((TreeSearch.Result<T>) filter).isMatch(node)) {
+			int[] range = ((TreeSearch.Result<T>) filter).highlight(display);
+			if (range != null)
+				row.setHighlight(range[0], range[1]);
+		}
 	}
 
 	public class PrettyTextView extends TextView {
@@ -134,28 +132,17 @@ public class ObjectTreeAdapter<T> extends TreeViewAdapter<T> {
 			// Appearance
 			setTextColor(Color.BLACK);
 			setTextSize(TypedValue.COMPLEX_UNIT_SP, 16f);
-			setTypeface(Typeface.SANS_SERIF, Typeface.BOLD);
+			setTypeface(style.labelTypeface);
 
 			// Padding
-			int hPadding = dp(6);
-			int vPadding = dp(3);
-			setPadding(hPadding, vPadding, hPadding, vPadding);
+			setPadding(style.pillPaddingH, style.pillPaddingV, style.pillPaddingH, style.pillPaddingV);
 
-			// Background with rounded corners
-			GradientDrawable bg = new GradientDrawable();
-			bg.setColor(Color.parseColor("#F5F5F5")); // Light background
-			bg.setCornerRadius(dp(12));
-			bg.setStroke(dp(1), Color.parseColor("#DDDDDD")); // Light border
-			setBackground(bg);
+			// Rounded background, shared with every other label
+			setBackground(style.newPillBackground());
 
 			// Center vertically for good layout with icons
 			setGravity(Gravity.CENTER_VERTICAL);
 		}
-
-		private int dp(int px) {
-			float density = getResources().getDisplayMetrics().density;
-			return Math.round(px * density);
-		}
 	}
 
 }
\ No newline at end of file
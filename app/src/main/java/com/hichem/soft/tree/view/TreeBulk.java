@@ -0,0 +1,500 @@
+package com.hichem.soft.tree.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Whole-tree operations split across a ForkJoinPool, for large trees handled
+ * off the main thread. Sibling ranges of at least {@code threshold} nodes are
+ * forked, so a subtree smaller than the threshold is walked sequentially by
+ * one thread and a small tree never leaves the calling thread. Splitting uses
+ * the cached descendant counts; stale counts only make the split uneven.
+ *
+ * <p>Walks are iterative and the largest part of each node is kept by the
+ * current task, so deep trees neither overflow the stack nor nest forks. The
+ * callbacks run concurrently on different nodes and must only touch the node
+ * they are given. The tree must not be edited while an operation runs.
+ */
+public class TreeBulk {
+
+	public static final int DEFAULT_THRESHOLD = 4096;
+
+	public interface Predicate<T> {
+		boolean test(TreeNode<T> node);
+	}
+
+	public interface Mapper<T, R> {
+		R map(T data);
+	}
+
+	public interface NodeAction<T> {
+		void apply(TreeNode<T> node);
+	}
+
+	/**
+	 * Aggregate over nodes. Partial results of different parts of the tree are
+	 * combined in no particular order, so combine must be associative and
+	 * commutative.
+	 */
+	public interface Folder<T, A> {
+		A identity();
+
+		A accumulate(A result, TreeNode<T> node);
+
+		A combine(A a, A b);
+	}
+
+	private static ForkJoinPool sharedPool;
+
+	private final ForkJoinPool pool;
+	private final int threshold;
+
+	/** Uses a pool shared by all instances, with one thread per core */
+	public TreeBulk() {
+		this(sharedPool(), DEFAULT_THRESHOLD);
+	}
+
+	public TreeBulk(ForkJoinPool pool, int threshold) {
+		if (threshold < 1)
+			throw new IllegalArgumentException("threshold must be positive");
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	private static synchronized ForkJoinPool sharedPool() {
+		// ForkJoinPool.commonPool() needs API 24
+		if (sharedPool == null)
+			sharedPool = new ForkJoinPool();
+		return sharedPool;
+	}
+
+	// === Read-only operations ===
+
+	/** Number of nodes in the subtrees matching the predicate */
+	public <T> int count(List<TreeNode<T>> roots, Predicate<T> predicate) {
+		return run(new CountChunk<>(roots, 0, roots.size(), 0, threshold, predicate), roots);
+	}
+
+	/** Nodes of the subtrees matching the predicate, in pre-order */
+	public <T> List<TreeNode<T>> filter(List<TreeNode<T>> roots, Predicate<T> predicate) {
+		return run(new FilterChunk<>(roots, 0, roots.size(), 0, threshold, predicate), roots);
+	}
+
+	public <T, A> A fold(List<TreeNode<T>> roots, Folder<T, A> folder) {
+		return run(new FoldChunk<>(roots, 0, roots.size(), 0, threshold, folder), roots);
+	}
+
+	/**
+	 * Copies the tree, mapping each node's data. Expanded state, icon, bar
+	 * color and the lazy flag are copied; cached counts of the new tree are
+	 * computed as it is built, without per-node ancestor updates.
+	 */
+	public <T, R> TreeRoot<R> map(List<TreeNode<T>> roots, Mapper<T, R> mapper) {
+		TreeRoot<R> copies = new TreeRoot<>();
+		for (TreeNode<T> root : roots) {
+			copies.appendDetached(MapChunk.copyOf(root, mapper, 0));
+		}
+		run(new MapChunk<>(roots, 0, roots.size(), 0, threshold, copies, mapper), roots);
+		return copies;
+	}
+
+	// === Updates ===
+
+	/**
+	 * Applies the action to every node of the tree, then recomputes cached
+	 * depths and counts in the same pass. The action may set flags such as
+	 * {@code expanded} but must not edit child lists.
+	 */
+	public <T> void update(TreeRoot<T> roots, NodeAction<T> action) {
+		run(new UpdateChunk<>(roots, 0, roots.size(), 0, threshold, action), roots);
+		roots.rowsChanged(0);
+	}
+
+	/** Expands or collapses every node that has children */
+	public <T> void setExpanded(TreeRoot<T> roots, final boolean expanded) {
+		update(roots, node -> {
+			if (!node.isLeaf())
+				node.expanded = expanded;
+		});
+	}
+
+	/** Parallel {@link TreeNode#recomputeCounts} over the whole tree */
+	public <T> void recount(TreeRoot<T> roots) {
+		update(roots, null);
+	}
+
+	private <T, A> A run(Chunk<T, A> chunk, List<TreeNode<T>> roots) {
+		long size = 0;
+		for (TreeNode<T> root : roots) {
+			size += 1 + root.descendantCount;
+		}
+		// Below the threshold nothing is forked, stay on this thread
+		return size < threshold ? chunk.invoke() : pool.invoke(chunk);
+	}
+
+	// === Work splitting ===
+
+	/**
+	 * Pre-order walk of a range of one sibling list. Children of each node are
+	 * grouped into ranges of at least threshold nodes; all but the largest are
+	 * forked, and a forked range sits on the walk stack so the walk reaches it
+	 * at its pre-order position.
+	 */
+	@SuppressWarnings("serial") // Tasks are never serialized
+	private abstract static class Chunk<T, A> extends RecursiveTask<A> {
+		final List<TreeNode<T>> list;
+		final int from;
+		final int to;
+		final int level;
+		final int threshold;
+		final ArrayList<Chunk<T, A>> forked = new ArrayList<>();
+
+		private Object[] items = new Object[32];
+		private int[] levels = new int[32];
+		private int[] positions = new int[32];
+		private int size;
+		// (start, end, nodes) triples, reused by each split
+		private int[] ranges = new int[12];
+
+		Chunk(List<TreeNode<T>> list, int from, int to, int level, int threshold) {
+			this.list = list;
+			this.from = from;
+			this.to = to;
+			this.level = level;
+			this.threshold = threshold;
+		}
+
+		/** A task for another range, at the given level */
+		abstract Chunk<T, A> split(List<TreeNode<T>> list, int from, int to, int level);
+
+		abstract void visit(TreeNode<T> node, int level, int position);
+
+		/** Called where a forked range sits in pre-order */
+		void reached(Chunk<T, A> chunk) {
+		}
+
+		/** Called once the forked ranges are done */
+		abstract A finish();
+
+		@Override
+		protected A compute() {
+			push(list, from, to, level, Long.MAX_VALUE);
+			while (size > 0) {
+				size--;
+				Object item = items[size];
+				items[size] = null;
+				if (item instanceof Chunk) {
+					@SuppressWarnings("unchecked")
+					Chunk<T, A> chunk = (Chunk<T, A>) item;
+					reached(chunk);
+					continue;
+				}
+				@SuppressWarnings("unchecked")
+				TreeNode<T> node = (TreeNode<T>) item;
+				int nodeLevel = levels[size];
+				visit(node, nodeLevel, positions[size]);
+				TreeRoot<T> children = node.getChildren();
+				if (!children.isEmpty())
+					push(children, 0, children.size(), nodeLevel + 1, node.descendantCount);
+			}
+			for (Chunk<T, A> chunk : forked) {
+				chunk.join();
+			}
+			return finish();
+		}
+
+		private void push(List<TreeNode<T>> siblings, int start, int end, int siblingLevel, long nodes) {
+			if (nodes < threshold) {
+				pushNodes(siblings, start, end, siblingLevel);
+				return;
+			}
+			int count = 0;
+			int runStart = start;
+			long run = 0;
+			for (int i = start; i < end; i++) {
+				long n = 1L + siblings.get(i).descendantCount;
+				if (n >= threshold) {
+					if (runStart < i)
+						count = addRange(count, runStart, i, run);
+					count = addRange(count, i, i + 1, n);
+					runStart = i + 1;
+					run = 0;
+				} else if ((run += n) >= threshold) {
+					count = addRange(count, runStart, i + 1, run);
+					runStart = i + 1;
+					run = 0;
+				}
+			}
+			if (runStart < end)
+				count = addRange(count, runStart, end, run);
+
+			int largest = 0;
+			for (int r = 1; r < count; r++) {
+				if (ranges[r * 3 + 2] > ranges[largest * 3 + 2])
+					largest = r;
+			}
+			for (int r = count - 1; r >= 0; r--) {
+				int rangeStart = ranges[r * 3];
+				int rangeEnd = ranges[r * 3 + 1];
+				if (r == largest || ranges[r * 3 + 2] < threshold) {
+					pushNodes(siblings, rangeStart, rangeEnd, siblingLevel);
+				} else {
+					Chunk<T, A> chunk = split(siblings, rangeStart, rangeEnd, siblingLevel);
+					chunk.fork();
+					forked.add(chunk);
+					pushItem(chunk, siblingLevel, rangeStart);
+				}
+			}
+		}
+
+		private int addRange(int count, int start, int end, long nodes) {
+			if ((count + 1) * 3 > ranges.length)
+				ranges = Arrays.copyOf(ranges, ranges.length * 2);
+			ranges[count * 3] = start;
+			ranges[count * 3 + 1] = end;
+			ranges[count * 3 + 2] = (int) Math.min(nodes, Integer.MAX_VALUE);
+			return count + 1;
+		}
+
+		private void pushNodes(List<TreeNode<T>> siblings, int start, int end, int siblingLevel) {
+			for (int i = end - 1; i >= start; i--) {
+				pushItem(siblings.get(i), siblingLevel, i);
+			}
+		}
+
+		private void pushItem(Object item, int itemLevel, int position) {
+			if (size == items.length) {
+				items = Arrays.copyOf(items, size * 2);
+				levels = Arrays.copyOf(levels, size * 2);
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			items[size] = item;
+			levels[size] = itemLevel;
+			positions[size] = position;
+			size++;
+		}
+	}
+
+	/** Sets cached counts bottom-up; nodes are in pre-order, children already counted */
+	static <T> void computeCounts(List<TreeNode<T>> preOrder) {
+		for (int i = preOrder.size() - 1; i >= 0; i--) {
+			TreeNode<T> node = preOrder.get(i);
+			int nodes = 0;
+			int rows = node.pendingRow != null ? 1 : 0;
+			for (TreeNode<T> child : node.getChildren()) {
+				nodes += 1 + child.descendantCount;
+				rows += child.rowCount();
+			}
+			node.descendantCount = nodes;
+			node.visibleDescendants = rows;
+			node.getChildren().rowsChanged(0);
+		}
+	}
+
+	// === Operations ===
+
+	@SuppressWarnings("serial")
+	private static class CountChunk<T> extends Chunk<T, Integer> {
+		final Predicate<T> predicate;
+		int count;
+
+		CountChunk(List<TreeNode<T>> list, int from, int to, int level, int threshold, Predicate<T> predicate) {
+			super(list, from, to, level, threshold);
+			this.predicate = predicate;
+		}
+
+		@Override
+		Chunk<T, Integer> split(List<TreeNode<T>> list, int from, int to, int level) {
+			return new CountChunk<>(list, from, to, level, threshold, predicate);
+		}
+
+		@Override
+		void visit(TreeNode<T> node, int level, int position) {
+			if (predicate.test(node))
+				count++;
+		}
+
+		@Override
+		Integer finish() {
+			int total = count;
+			for (Chunk<T, Integer> chunk : forked) {
+				total += chunk.getRawResult();
+			}
+			return total;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class FilterChunk<T> extends Chunk<T, List<TreeNode<T>>> {
+		final Predicate<T> predicate;
+		// Own matches between forked ranges, interleaved with those ranges
+		final ArrayList<Object> parts = new ArrayList<>();
+		ArrayList<TreeNode<T>> current = new ArrayList<>();
+
+		FilterChunk(List<TreeNode<T>> list, int from, int to, int level, int threshold, Predicate<T> predicate) {
+			super(list, from, to, level, threshold);
+			this.predicate = predicate;
+		}
+
+		@Override
+		Chunk<T, List<TreeNode<T>>> split(List<TreeNode<T>> list, int from, int to, int level) {
+			return new FilterChunk<>(list, from, to, level, threshold, predicate);
+		}
+
+		@Override
+		void visit(TreeNode<T> node, int level, int position) {
+			if (predicate.test(node))
+				current.add(node);
+		}
+
+		@Override
+		void reached(Chunk<T, List<TreeNode<T>>> chunk) {
+			parts.add(current);
+			parts.add(chunk);
+			current = new ArrayList<>();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		List<TreeNode<T>> finish() {
+			if (parts.isEmpty())
+				return current;
+			parts.add(current);
+			int total = 0;
+			for (Object part : parts) {
+				total += part instanceof Chunk ? ((Chunk<T, List<TreeNode<T>>>) part).getRawResult().size()
+						: ((List<TreeNode<T>>) part).size();
+			}
+			ArrayList<TreeNode<T>> result = new ArrayList<>(total);
+			for (Object part : parts) {
+				result.addAll(part instanceof Chunk ? ((Chunk<T, List<TreeNode<T>>>) part).getRawResult()
+						: (List<TreeNode<T>>) part);
+			}
+			return result;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class FoldChunk<T, A> extends Chunk<T, A> {
+		final Folder<T, A> folder;
+		A result;
+
+		FoldChunk(List<TreeNode<T>> list, int from, int to, int level, int threshold, Folder<T, A> folder) {
+			super(list, from, to, level, threshold);
+			this.folder = folder;
+			this.result = folder.identity();
+		}
+
+		@Override
+		Chunk<T, A> split(List<TreeNode<T>> list, int from, int to, int level) {
+			return new FoldChunk<>(list, from, to, level, threshold, folder);
+		}
+
+		@Override
+		void visit(TreeNode<T> node, int level, int position) {
+			result = folder.accumulate(result, node);
+		}
+
+		@Override
+		A finish() {
+			A total = result;
+			for (Chunk<T, A> chunk : forked) {
+				total = folder.combine(total, chunk.getRawResult());
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Fills the copies of a range of nodes. Each visited node creates the
+	 * copies of its children, so a forked range finds its copies in place.
+	 */
+	@SuppressWarnings("serial")
+	private static class MapChunk<T, R> extends Chunk<T, Void> {
+		final List<TreeNode<R>> targets;
+		final Mapper<T, R> mapper;
+		// Copy of the current node at each level below this range
+		final ArrayList<TreeNode<R>> path = new ArrayList<>();
+		final ArrayList<TreeNode<R>> copies = new ArrayList<>();
+
+		MapChunk(List<TreeNode<T>> list, int from, int to, int level, int threshold,
+				List<TreeNode<R>> targets, Mapper<T, R> mapper) {
+			super(list, from, to, level, threshold);
+			this.targets = targets;
+			this.mapper = mapper;
+		}
+
+		static <T, R> TreeNode<R> copyOf(TreeNode<T> node, Mapper<T, R> mapper, int depth) {
+			TreeNode<R> copy = new TreeNode<>(mapper.map(node.data));
+			copy.expanded = node.expanded;
+			copy.iconResId = node.iconResId;
+			copy.barColor = node.barColor;
+			copy.setLazy(node.isLazy());
+			copy.depth = depth;
+			return copy;
+		}
+
+		private List<TreeNode<R>> targetsAt(int level) {
+			int relative = level - this.level;
+			return relative == 0 ? targets : path.get(relative - 1).getChildren();
+		}
+
+		@Override
+		Chunk<T, Void> split(List<TreeNode<T>> list, int from, int to, int level) {
+			return new MapChunk<>(list, from, to, level, threshold, targetsAt(level), mapper);
+		}
+
+		@Override
+		void visit(TreeNode<T> node, int level, int position) {
+			TreeNode<R> copy = targetsAt(level).get(position);
+			int relative = level - this.level;
+			while (path.size() > relative)
+				path.remove(path.size() - 1);
+			path.add(copy);
+			copies.add(copy);
+			TreeRoot<R> children = copy.getChildren();
+			for (TreeNode<T> child : node.getChildren()) {
+				children.appendDetached(copyOf(child, mapper, level + 1));
+			}
+		}
+
+		@Override
+		Void finish() {
+			computeCounts(copies);
+			return null;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class UpdateChunk<T> extends Chunk<T, Void> {
+		final NodeAction<T> action;
+		final ArrayList<TreeNode<T>> visited = new ArrayList<>();
+
+		UpdateChunk(List<TreeNode<T>> list, int from, int to, int level, int threshold, NodeAction<T> action) {
+			super(list, from, to, level, threshold);
+			this.action = action;
+		}
+
+		@Override
+		Chunk<T, Void> split(List<TreeNode<T>> list, int from, int to, int level) {
+			return new UpdateChunk<>(list, from, to, level, threshold, action);
+		}
+
+		@Override
+		void visit(TreeNode<T> node, int level, int position) {
+			if (action != null)
+				action.apply(node);
+			node.depth = level;
+			visited.add(node);
+		}
+
+		@Override
+		Void finish() {
+			computeCounts(visited);
+			return null;
+		}
+	}
+}
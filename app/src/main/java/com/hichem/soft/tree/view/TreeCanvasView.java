@@ -0,0 +1,375 @@
+package com.hichem.soft.tree.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.OverScroller;
+import java.util.Arrays;
+
+/**
+ * Draws a whole tree on one canvas: no row views, no adapter. Only the rows
+ * inside the viewport are drawn, guide lines for all of them are computed in
+ * a single pass, and touches are mapped to rows by their fixed height. Meant
+ * for large read-only trees; for editable rows use {@link TreeViewAdapter}.
+ */
+public class TreeCanvasView<T> extends View {
+
+	private final TreeRoot<T> roots;
+	private final VisibleNodeList<T> visibleNodes;
+	private final ObjectTreeAdapter.Formatter<T> formatter;
+	private TreeViewListener<T> listener;
+	private TreeStyle style;
+	private int rowHeight;
+
+	private final GestureDetector gestures;
+	private final OverScroller scroller;
+	private final SparseArray<Drawable> icons = new SparseArray<>();
+	private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private DisplayTextCache<T> labels;
+
+	// Per level: whether the ancestor at that level has a later sibling
+	private boolean[] continues = new boolean[32];
+
+	public TreeCanvasView(Context context, TreeRoot<T> roots, ObjectTreeAdapter.Formatter<T> formatter) {
+		super(context);
+		this.roots = roots;
+		this.formatter = formatter;
+		this.visibleNodes = new VisibleNodeList<>(roots);
+		this.scroller = new OverScroller(context);
+		this.gestures = new GestureDetector(context, new GestureListener());
+		setStyle(new TreeStyle(context));
+		setClickable(true);
+		setLongClickable(true);
+
+		visibleNodes.setRangeListener(new VisibleNodeList.RangeListener() {
+			@Override
+			public void onRangeInserted(int start, int count) {
+				invalidate();
+			}
+
+			@Override
+			public void onRangeRemoved(int start, int count) {
+				clampScroll();
+				invalidate();
+			}
+
+			@Override
+			public void onRangeChanged(int start, int count) {
+				invalidate();
+			}
+		});
+	}
+
+	public void setListener(TreeViewListener<T> listener) {
+		this.listener = listener;
+	}
+
+	public void setStyle(TreeStyle style) {
+		this.style = style;
+		this.rowHeight = Math.max(TreeStyle.ICON_SIZE, Math.round(style.labelHeight)) + 2 * TreeStyle.VERTICAL_PADDING;
+		linePaint.setColor(TreeStyle.LINE_COLOR);
+		linePaint.setStrokeWidth(4f);
+		icons.clear();
+		labels = new DisplayTextCache<>(formatter, style.labelPaint);
+		invalidate();
+	}
+
+	public TreeStyle getStyle() {
+		return style;
+	}
+
+	public VisibleNodeList<T> getVisibleNodes() {
+		return visibleNodes;
+	}
+
+	/** Rebuilds the rows, picking up any direct writes to node fields */
+	public void refresh() {
+		visibleNodes.rebuild();
+		labels.invalidateAll();
+		clampScroll();
+		invalidate();
+	}
+
+	// === Partial updates ===
+
+	/** Redraws the node's row after its data or appearance changed */
+	public void notifyNodeChanged(TreeNode<T> node) {
+		labels.invalidate(node);
+		visibleNodes.notifyChanged(node);
+	}
+
+	/** See {@link TreeViewAdapter#notifyChildrenInserted} */
+	public void notifyChildrenInserted(TreeNode<T> parent, int start, int count) {
+		visibleNodes.insertChildren(parent, start, count);
+	}
+
+	public void notifyNodeRemoved(TreeNode<T> node) {
+		visibleNodes.remove(node);
+	}
+
+	/** See {@link TreeViewAdapter#notifyNodeRemoved(TreeNode, TreeNode)} */
+	public void notifyNodeRemoved(TreeNode<T> parent, TreeNode<T> node) {
+		visibleNodes.remove(parent, node);
+	}
+
+	/** Shows only the rows the filter accepts, see {@link TreeViewAdapter#setFilter} */
+	public void setFilter(VisibleNodeList.Filter<T> filter) {
+		visibleNodes.setFilter(filter);
+		clampScroll();
+		invalidate();
+	}
+
+	public void expandNode(TreeNode<T> node) {
+		if (visibleNodes.isExpanded(node))
+			return;
+		visibleNodes.expand(node);
+		if (listener != null)
+			listener.onNodeExpand(node);
+	}
+
+	public void collapseNode(TreeNode<T> node) {
+		if (!visibleNodes.isExpanded(node))
+			return;
+		visibleNodes.collapse(node);
+		if (listener != null)
+			listener.onNodeCollapse(node);
+	}
+
+	/** Returns the node drawn at the y coordinate (view space), or null */
+	public TreeNode<T> nodeAt(float y) {
+		int index = (int) ((y + getScrollY() - getPaddingTop()) / rowHeight);
+		if (y < 0 || index < 0 || index >= visibleNodes.size())
+			return null;
+		return visibleNodes.get(index);
+	}
+
+	/** Scrolls so the node's row is at the top, if it is visible */
+	public void scrollToNode(TreeNode<T> node) {
+		int index = visibleNodes.indexOf(node);
+		if (index < 0)
+			return;
+		scroller.forceFinished(true);
+		scrollTo(0, index * rowHeight);
+		clampScroll();
+	}
+
+	// === Scrolling ===
+
+	private int maxScroll() {
+		int content = visibleNodes.size() * rowHeight + getPaddingTop() + getPaddingBottom();
+		return Math.max(0, content - getHeight());
+	}
+
+	private void clampScroll() {
+		int y = Math.min(getScrollY(), maxScroll());
+		if (y != getScrollY())
+			scrollTo(0, y);
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		clampScroll();
+	}
+
+	@Override
+	public void computeScroll() {
+		if (scroller.computeScrollOffset()) {
+			scrollTo(0, scroller.getCurrY());
+			postInvalidateOnAnimation();
+		}
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		return gestures.onTouchEvent(event) || super.onTouchEvent(event);
+	}
+
+	private class GestureListener extends GestureDetector.SimpleOnGestureListener {
+
+		@Override
+		public boolean onDown(MotionEvent e) {
+			scroller.forceFinished(true);
+			return true;
+		}
+
+		@Override
+		public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
+			int y = Math.max(0, Math.min(maxScroll(), getScrollY() + Math.round(dy)));
+			scrollTo(0, y);
+			return true;
+		}
+
+		@Override
+		public boolean onFling(MotionEvent e1, MotionEvent e2, float vx, float vy) {
+			scroller.fling(0, getScrollY(), 0, -Math.round(vy), 0, 0, 0, maxScroll());
+			postInvalidateOnAnimation();
+			return true;
+		}
+
+		@Override
+		public boolean onSingleTapUp(MotionEvent e) {
+			TreeNode<T> node = nodeAt(e.getY());
+			if (node == null || node.isPlaceholder())
+				return false;
+			if (node.isExpandable()) {
+				if (visibleNodes.isExpanded(node))
+					collapseNode(node);
+				else
+					expandNode(node);
+			}
+			if (listener != null)
+				listener.onNodeClick(node);
+			return true;
+		}
+
+		@Override
+		public void onLongPress(MotionEvent e) {
+			TreeNode<T> node = nodeAt(e.getY());
+			if (node != null && !node.isPlaceholder() && listener != null)
+				listener.onNodeLongClick(node);
+		}
+	}
+
+	// === Drawing ===
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		int size = visibleNodes.size();
+		if (size == 0)
+			return;
+		int top = getScrollY() - getPaddingTop();
+		int first = Math.max(0, top / rowHeight);
+		int last = Math.min(size - 1, (top + getHeight()) / rowHeight);
+		if (first > last)
+			return;
+
+		seedContinues(visibleNodes.get(first));
+		for (int i = first; i <= last; i++) {
+			TreeNode<T> node = visibleNodes.get(i);
+			int level = rowLevel(node);
+			ensureLevels(level);
+			continues[level] = hasNextSibling(node);
+			float y = getPaddingTop() + i * rowHeight;
+			boolean hasChildRows = i + 1 < size && rowLevel(visibleNodes.get(i + 1)) > level;
+			drawGuideLines(canvas, level, hasChildRows, y);
+			drawRow(canvas, node, level, y);
+		}
+	}
+
+	/** Fills the continuation flags for the ancestors of the first drawn row */
+	private void seedContinues(TreeNode<T> node) {
+		ensureLevels(rowLevel(node));
+		for (TreeNode<T> a = node.parent; a != null; a = a.parent) {
+			continues[a.getLevel()] = hasNextSibling(a);
+		}
+	}
+
+	private void ensureLevels(int level) {
+		if (level >= continues.length)
+			continues = Arrays.copyOf(continues, Math.max(level + 1, continues.length * 2));
+	}
+
+	private static int rowLevel(TreeNode<?> node) {
+		return node.isPlaceholder() ? node.parent.getLevel() + 1 : node.getLevel();
+	}
+
+	private boolean hasNextSibling(TreeNode<T> node) {
+		if (node.isPlaceholder())
+			return false;
+		TreeRoot<T> siblings = node.parent != null ? node.parent.getChildren() : roots;
+		if (node.parent != null && node.parent.pendingRow != null)
+			return true; // the placeholder row follows the last child
+		return node.getIndexInParent() < siblings.size() - 1;
+	}
+
+	private static float columnX(int level) {
+		return TreeStyle.BASE_PADDING + level * TreeStyle.LEVEL_SPACING + TreeStyle.BAR_WIDTH / 2f;
+	}
+
+	private void drawGuideLines(Canvas canvas, int level, boolean hasChildRows, float y) {
+		float bottom = y + rowHeight;
+		float centerY = y + rowHeight / 2f;
+
+		// Lines passing through for ancestors that have later siblings
+		for (int d = 1; d < level; d++) {
+			if (continues[d]) {
+				float x = columnX(d - 1);
+				canvas.drawLine(x, y, x, bottom, linePaint);
+			}
+		}
+
+		// Elbow from the parent's column into this row
+		if (level > 0) {
+			float x = columnX(level - 1);
+			canvas.drawLine(x, y, x, continues[level] ? bottom : centerY, linePaint);
+			canvas.drawLine(x, centerY, columnX(level) - TreeStyle.BAR_WIDTH / 2f, centerY, linePaint);
+		}
+
+		// Stem down to the first child
+		if (hasChildRows) {
+			float x = columnX(level);
+			canvas.drawLine(x, centerY, x, bottom, linePaint);
+		}
+	}
+
+	private void drawRow(Canvas canvas, TreeNode<T> node, int level, float y) {
+		float centerY = y + rowHeight / 2f;
+		float x = TreeStyle.BASE_PADDING + level * TreeStyle.LEVEL_SPACING;
+
+		if (node.isPlaceholder()) {
+			Paint paint = style.indicatorPaint;
+			paint.setColor(Color.DKGRAY);
+			float baseline = centerY - (paint.descent() + paint.ascent()) / 2f;
+			canvas.drawText(node.parent.isLoading() ? "Loading\u2026" : "\u2026", x + TreeStyle.BAR_WIDTH + TreeStyle.GAP, baseline, paint);
+			return;
+		}
+
+		// Color bar
+		style.barPaint.setColor(node.barColor != -1 ? node.barColor : (node.isEmpty() ? Color.GRAY : Color.TRANSPARENT));
+		canvas.drawRect(x, y + TreeStyle.VERTICAL_PADDING, x + TreeStyle.BAR_WIDTH, y + rowHeight - TreeStyle.VERTICAL_PADDING, style.barPaint);
+		x += TreeStyle.BAR_WIDTH + TreeStyle.GAP;
+
+		// Icon
+		Drawable icon = iconFor(node.iconResId);
+		if (icon != null) {
+			int iconTop = Math.round(centerY - TreeStyle.ICON_SIZE / 2f);
+			icon.setBounds((int) x, iconTop, (int) x + TreeStyle.ICON_SIZE, iconTop + TreeStyle.ICON_SIZE);
+			icon.draw(canvas);
+			x += TreeStyle.ICON_SIZE;
+		}
+
+		// Label
+		DisplayTextCache.Entry label = labels.entry(node);
+		Paint textPaint = style.labelPaint;
+		float baseline = centerY - (textPaint.descent() + textPaint.ascent()) / 2f;
+		canvas.drawText(label.text, x + style.pillPaddingH, baseline, textPaint);
+		x += label.width + 2 * style.pillPaddingH;
+
+		// Expand indicator
+		if (node.isExpandable()) {
+			boolean expanded = visibleNodes.isExpanded(node);
+			style.indicatorPaint.setColor(expanded ? Color.LTGRAY : Color.DKGRAY);
+			canvas.drawText(expanded ? "  -" : "  +", x, baseline, style.indicatorPaint);
+		}
+	}
+
+	/** One drawable per resource; bounds are set right before each draw */
+	private Drawable iconFor(int resId) {
+		if (resId == -1)
+			return null;
+		Drawable icon = icons.get(resId);
+		if (icon == null) {
+			icon = style.icon(resId);
+			if (icon != null)
+				icons.put(resId, icon);
+		}
+		return icon;
+	}
+}
@@ -0,0 +1,310 @@
+package com.hichem.soft.tree.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Keyed diff between the visible rows of two trees. Meant to run off the main
+ * thread: {@link #calculate} carries the expanded state of the old tree over
+ * to nodes of the new tree with the same key, flattens the new tree's visible
+ * rows and matches them against the old rows with Myers' linear-space diff.
+ * The result is applied with {@link VisibleNodeList#replace}.
+ */
+public class TreeDiff {
+
+	/** Row diff between two trees, ready to be applied on the main thread */
+	public static class Result<T> {
+		final TreeRoot<T> newRoots;
+		final List<TreeNode<T>> newRows;
+		final int oldSize;
+		// (oldIndex, newIndex, length) triples of matched rows, in order
+		final int[] diagonals;
+		final int diagonalCount;
+		// New row indexes whose matched old row must be rebound
+		final BitSet changed;
+		// VisibleNodeList state the diff was computed against
+		final int baseVersion;
+
+		Result(TreeRoot<T> newRoots, List<TreeNode<T>> newRows, int oldSize, int[] diagonals,
+				int diagonalCount, BitSet changed, int baseVersion) {
+			this.newRoots = newRoots;
+			this.newRows = newRows;
+			this.oldSize = oldSize;
+			this.diagonals = diagonals;
+			this.diagonalCount = diagonalCount;
+			this.changed = changed;
+			this.baseVersion = baseVersion;
+		}
+
+		public TreeRoot<T> getNewRoots() {
+			return newRoots;
+		}
+
+		/** Number of rows inserted or removed, 0 if only contents changed */
+		public int getStructuralChangeCount() {
+			int matched = 0;
+			for (int i = 0; i < diagonalCount; i++) {
+				matched += diagonals[i * 3 + 2];
+			}
+			return (oldSize - matched) + (newRows.size() - matched);
+		}
+
+		public int getChangedRowCount() {
+			return changed.cardinality();
+		}
+	}
+
+	private TreeDiff() {
+	}
+
+	/**
+	 * Computes the diff from a snapshot of the current rows to the new tree.
+	 * The new tree's expanded flags and cached counts are updated in place.
+	 * The old tree is only read; it must not be edited until the result has
+	 * been applied or dropped.
+	 */
+	public static <T> Result<T> calculate(TreeRoot<T> oldRoots, List<TreeNode<T>> oldRows, int baseVersion,
+			TreeRoot<T> newRoots, KeyExtractor<T> keys) {
+		// Old nodes by key, to carry the expanded state over
+		HashMap<Object, TreeNode<T>> oldByKey = new HashMap<>();
+		for (TreeNode<T> node : TreeTraversal.iterate(oldRoots, TreeTraversal.Order.PRE_ORDER)) {
+			Object key = keys.keyOf(node.data);
+			if (!oldByKey.containsKey(key))
+				oldByKey.put(key, node);
+		}
+		for (TreeNode<T> node : TreeTraversal.iterate(newRoots, TreeTraversal.Order.PRE_ORDER)) {
+			TreeNode<T> old = oldByKey.get(keys.keyOf(node.data));
+			if (old != null)
+				node.expanded = old.expanded;
+		}
+		for (TreeNode<T> root : newRoots) {
+			root.recomputeCounts();
+		}
+
+		ArrayList<TreeNode<T>> newRows = new ArrayList<>();
+		for (TreeNode<T> node : TreeTraversal.iterate(newRoots, TreeTraversal.Order.VISIBLE)) {
+			newRows.add(node);
+		}
+
+		Object[] oldKeys = new Object[oldRows.size()];
+		for (int i = 0; i < oldKeys.length; i++) {
+			TreeNode<T> node = oldRows.get(i);
+			// Placeholder rows never match, they are rebuilt by the adapter
+			oldKeys[i] = node.isPlaceholder() ? new Object() : keys.keyOf(node.data);
+		}
+		Object[] newKeys = new Object[newRows.size()];
+		for (int i = 0; i < newKeys.length; i++) {
+			newKeys[i] = keys.keyOf(newRows.get(i).data);
+		}
+
+		Diagonals diagonals = diff(oldKeys, newKeys);
+		BitSet changed = new BitSet();
+		for (int d = 0; d < diagonals.count; d++) {
+			int x = diagonals.data[d * 3];
+			int y = diagonals.data[d * 3 + 1];
+			int length = diagonals.data[d * 3 + 2];
+			for (int i = 0; i < length; i++) {
+				if (!sameContent(oldRows.get(x + i), newRows.get(y + i), oldRoots, newRoots))
+					changed.set(y + i);
+			}
+		}
+		return new Result<>(newRoots, newRows, oldRows.size(), diagonals.data, diagonals.count, changed, baseVersion);
+	}
+
+	/** True if a row bound to the old node would look the same for the new one */
+	private static <T> boolean sameContent(TreeNode<T> a, TreeNode<T> b, TreeRoot<T> aRoots, TreeRoot<T> bRoots) {
+		return Objects.equals(a.data, b.data)
+				&& a.iconResId == b.iconResId
+				&& a.barColor == b.barColor
+				&& a.expanded == b.expanded
+				&& a.getLevel() == b.getLevel()
+				&& a.isExpandable() == b.isExpandable()
+				&& isLast(a, aRoots) == isLast(b, bRoots);
+	}
+
+	// Guide lines depend on whether the node is its parent's last child
+	private static <T> boolean isLast(TreeNode<T> node, TreeRoot<T> roots) {
+		List<TreeNode<T>> siblings = node.parent != null ? node.parent.getChildren() : roots;
+		return !siblings.isEmpty() && siblings.get(siblings.size() - 1) == node;
+	}
+
+	// === Myers diff ===
+
+	/** Growable list of (x, y, length) triples */
+	static class Diagonals {
+		int[] data = new int[48];
+		int count;
+
+		void add(int x, int y, int length) {
+			if (length <= 0)
+				return;
+			if ((count + 1) * 3 > data.length)
+				data = Arrays.copyOf(data, data.length * 2);
+			data[count * 3] = x;
+			data[count * 3 + 1] = y;
+			data[count * 3 + 2] = length;
+			count++;
+		}
+	}
+
+	/**
+	 * Matches equal elements of the two sequences, returning the matched runs
+	 * sorted by position. Divide and conquer on the middle snake with an
+	 * explicit work stack; O((N + M) D) time and O(N + M) space.
+	 */
+	static Diagonals diff(Object[] a, Object[] b) {
+		Diagonals out = new Diagonals();
+
+		// Common prefix and suffix are the usual case for live updates
+		int start = 0;
+		while (start < a.length && start < b.length && Objects.equals(a[start], b[start]))
+			start++;
+		int aEnd = a.length;
+		int bEnd = b.length;
+		while (aEnd > start && bEnd > start && Objects.equals(a[aEnd - 1], b[bEnd - 1])) {
+			aEnd--;
+			bEnd--;
+		}
+		out.add(0, 0, start);
+
+		int max = (aEnd - start + bEnd - start + 1) / 2 + 1;
+		int[] forward = new int[max * 2 + 1];
+		int[] backward = new int[max * 2 + 1];
+		int[] snake = new int[5];
+		ArrayList<int[]> stack = new ArrayList<>();
+		stack.add(new int[] { start, aEnd, start, bEnd });
+		while (!stack.isEmpty()) {
+			int[] range = stack.remove(stack.size() - 1);
+			if (!midSnake(a, b, range, forward, backward, max, snake))
+				continue;
+			addDiagonal(out, snake);
+			stack.add(new int[] { range[0], snake[0], range[2], snake[1] });
+			stack.add(new int[] { snake[2], range[1], snake[3], range[3] });
+		}
+		out.add(aEnd, bEnd, a.length - aEnd);
+		sort(out);
+		return out;
+	}
+
+	/** Converts a snake (startX, startY, endX, endY, reverse) to its diagonal */
+	private static void addDiagonal(Diagonals out, int[] s) {
+		int dx = s[2] - s[0];
+		int dy = s[3] - s[1];
+		int size = Math.min(dx, dy);
+		if (dx == dy) {
+			out.add(s[0], s[1], dx);
+		} else if (s[4] == 1) {
+			out.add(s[0], s[1], size);
+		} else if (dy > dx) {
+			out.add(s[0], s[1] + 1, size);
+		} else {
+			out.add(s[0] + 1, s[1], size);
+		}
+	}
+
+	private static boolean midSnake(Object[] a, Object[] b, int[] range, int[] forward, int[] backward,
+			int offset, int[] snake) {
+		int oldSize = range[1] - range[0];
+		int newSize = range[3] - range[2];
+		if (oldSize < 1 || newSize < 1)
+			return false;
+		int max = (oldSize + newSize + 1) / 2;
+		forward[offset + 1] = range[0];
+		backward[offset + 1] = range[1];
+		for (int d = 0; d < max; d++) {
+			if (forwardStep(a, b, range, forward, backward, offset, d, snake))
+				return true;
+			if (backwardStep(a, b, range, forward, backward, offset, d, snake))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean forwardStep(Object[] a, Object[] b, int[] range, int[] forward, int[] backward,
+			int offset, int d, int[] snake) {
+		int delta = (range[1] - range[0]) - (range[3] - range[2]);
+		boolean checkOverlap = Math.abs(delta) % 2 == 1;
+		for (int k = -d; k <= d; k += 2) {
+			int startX;
+			int x;
+			if (k == -d || (k != d && forward[offset + k + 1] > forward[offset + k - 1])) {
+				x = startX = forward[offset + k + 1];
+			} else {
+				startX = forward[offset + k - 1];
+				x = startX + 1;
+			}
+			int y = range[2] + (x - range[0]) - k;
+			int startY = (d == 0 || x != startX) ? y : y - 1;
+			while (x < range[1] && y < range[3] && Objects.equals(a[x], b[y])) {
+				x++;
+				y++;
+			}
+			forward[offset + k] = x;
+			if (checkOverlap) {
+				int backwardK = delta - k;
+				if (backwardK >= -d + 1 && backwardK <= d - 1 && backward[offset + backwardK] <= x) {
+					setSnake(snake, startX, startY, x, y, 0);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean backwardStep(Object[] a, Object[] b, int[] range, int[] forward, int[] backward,
+			int offset, int d, int[] snake) {
+		int delta = (range[1] - range[0]) - (range[3] - range[2]);
+		boolean checkOverlap = delta % 2 == 0;
+		for (int k = -d; k <= d; k += 2) {
+			int startX;
+			int x;
+			if (k == -d || (k != d && backward[offset + k + 1] < backward[offset + k - 1])) {
+				x = startX = backward[offset + k + 1];
+			} else {
+				startX = backward[offset + k - 1];
+				x = startX - 1;
+			}
+			int y = range[3] - ((range[1] - x) - k);
+			int startY = (d == 0 || x != startX) ? y : y + 1;
+			while (x > range[0] && y > range[2] && Objects.equals(a[x - 1], b[y - 1])) {
+				x--;
+				y--;
+			}
+			backward[offset + k] = x;
+			if (checkOverlap) {
+				int forwardK = delta - k;
+				if (forwardK >= -d && forwardK <= d && forward[offset + forwardK] >= x) {
+					setSnake(snake, x, y, startX, startY, 1);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void setSnake(int[] snake, int startX, int startY, int endX, int endY, int reverse) {
+		snake[0] = startX;
+		snake[1] = startY;
+		snake[2] = endX;
+		snake[3] = endY;
+		snake[4] = reverse;
+	}
+
+	private static void sort(Diagonals diagonals) {
+		Integer[] order = new Integer[diagonals.count];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		final int[] data = diagonals.data;
+		Arrays.sort(order, (p, q) -> Integer.compare(data[p * 3], data[q * 3]));
+		int[] sorted = new int[Math.max(3, order.length * 3)];
+		for (int i = 0; i < order.length; i++) {
+			System.arraycopy(data, order[i] * 3, sorted, i * 3, 3);
+		}
+		diagonals.data = sorted;
+	}
+}
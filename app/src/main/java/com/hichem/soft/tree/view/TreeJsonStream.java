@@ -0,0 +1,321 @@
+package com.hichem.soft.tree.view;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Streaming variants of the JSON methods in {@link TreeUtils}. Nodes are read
+ * and written in one pass without building a JSONObject/JSONArray DOM, and
+ * with an explicit stack so deep trees cannot overflow the call stack.
+ * The formats match {@code fromJson}/{@code toJson} and
+ * {@code fromAnyJson}/{@code toAnyJson}.
+ */
+public class TreeJsonStream {
+
+	private TreeJsonStream() {
+	}
+
+	// === data/expanded/iconResId/barColor/children schema ===
+
+	public static TreeRoot<String> read(InputStream in) throws IOException {
+		return read(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/** Streaming equivalent of {@link TreeUtils#fromJson} */
+	public static TreeRoot<String> read(Reader reader) throws IOException {
+		JsonReader in = new JsonReader(reader);
+		TreeRoot<String> root = new TreeRoot<>();
+		try {
+			if (in.peek() == JsonToken.BEGIN_ARRAY) {
+				in.beginArray();
+				while (in.hasNext()) {
+					root.add(readNode(in));
+				}
+				in.endArray();
+			} else if (in.peek() == JsonToken.BEGIN_OBJECT) {
+				root.add(readNode(in));
+			} else {
+				throw new IllegalArgumentException("JSON must start with '[' or '{'");
+			}
+		} catch (IllegalStateException e) {
+			throw new IllegalArgumentException("Invalid JSON structure for TreeRoot", e);
+		}
+		return root;
+	}
+
+	private static TreeNode<String> readNode(JsonReader in) throws IOException {
+		ArrayList<TreeNode<String>> stack = new ArrayList<>();
+		in.beginObject();
+		stack.add(new TreeNode<>(null));
+		while (true) {
+			TreeNode<String> node = stack.get(stack.size() - 1);
+			if (in.hasNext()) {
+				String name = in.nextName();
+				switch (name) {
+					case "data":
+						node.data = readString(in);
+						break;
+					case "expanded":
+						node.expanded = in.nextBoolean();
+						break;
+					case "iconResId":
+						node.iconResId = in.nextInt();
+						break;
+					case "barColor":
+						node.barColor = in.nextInt();
+						break;
+					case "children":
+						in.beginArray();
+						if (in.hasNext()) {
+							in.beginObject();
+							stack.add(new TreeNode<>(null));
+						} else {
+							in.endArray();
+						}
+						break;
+					default:
+						in.skipValue();
+				}
+				continue;
+			}
+
+			// End of this node's object
+			in.endObject();
+			if (node.data == null)
+				throw new IllegalArgumentException("Node without \"data\"");
+			stack.remove(stack.size() - 1);
+			if (stack.isEmpty())
+				return node;
+
+			// Attach once complete so the cached counts are added in one step
+			stack.get(stack.size() - 1).addChild(node);
+			if (in.hasNext()) {
+				in.beginObject();
+				stack.add(new TreeNode<>(null));
+			} else {
+				in.endArray();
+			}
+		}
+	}
+
+	private static String readString(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return "null";
+		}
+		return in.nextString();
+	}
+
+	public static <T> void write(TreeRoot<T> root, OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		write(root, writer);
+		writer.flush();
+	}
+
+	/** Streaming equivalent of {@link TreeUtils#toJson}; the writer is flushed, not closed */
+	public static <T> void write(TreeRoot<T> root, Writer writer) throws IOException {
+		JsonWriter out = new JsonWriter(writer);
+		out.setIndent("  ");
+		ArrayList<Iterator<TreeNode<T>>> stack = new ArrayList<>();
+		out.beginArray();
+		stack.add(root.iterator());
+		while (!stack.isEmpty()) {
+			Iterator<TreeNode<T>> it = stack.get(stack.size() - 1);
+			if (it.hasNext()) {
+				TreeNode<T> node = it.next();
+				out.beginObject();
+				out.name("data").value(String.valueOf(node.data));
+				out.name("expanded").value(node.expanded);
+				out.name("iconResId").value(node.iconResId);
+				out.name("barColor").value(node.barColor);
+				out.name("children").beginArray();
+				stack.add(node.getChildren().iterator());
+			} else {
+				stack.remove(stack.size() - 1);
+				out.endArray();
+				if (!stack.isEmpty())
+					out.endObject();
+			}
+		}
+		out.flush();
+	}
+
+	// === Any JSON ===
+
+	public static TreeNode<Object> readAny(InputStream in) throws IOException {
+		return readAny(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/** Streaming equivalent of {@link TreeUtils#fromAnyJson}; node data is a {@link JsonEntry} likewise */
+	public static TreeNode<Object> readAny(Reader reader) throws IOException {
+		JsonReader in = new JsonReader(reader);
+		in.setLenient(true);
+		JsonToken first = in.peek();
+		if (first != JsonToken.BEGIN_OBJECT && first != JsonToken.BEGIN_ARRAY) {
+			// Not a container, treat as single data node
+			return new TreeNode<>(readPrimitive(in));
+		}
+
+		ArrayList<Frame> stack = new ArrayList<>();
+		stack.add(open(in, first == JsonToken.BEGIN_OBJECT ? "root" : "array"));
+		while (true) {
+			Frame frame = stack.get(stack.size() - 1);
+			if (!in.hasNext()) {
+				if (frame.array)
+					in.endArray();
+				else
+					in.endObject();
+				stack.remove(stack.size() - 1);
+				if (stack.isEmpty())
+					return frame.node;
+				stack.get(stack.size() - 1).node.addChild(frame.node);
+				continue;
+			}
+
+			String name = frame.array ? "[" + frame.count++ + "]" : in.nextName();
+			JsonToken token = in.peek();
+			if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+				stack.add(open(in, name));
+			} else {
+				frame.node.addChild(new TreeNode<>(readEntry(in, name)));
+			}
+		}
+	}
+
+	private static class Frame {
+		final TreeNode<Object> node;
+		final boolean array;
+		int count;
+
+		Frame(TreeNode<Object> node, boolean array) {
+			this.node = node;
+			this.array = array;
+		}
+	}
+
+	private static Frame open(JsonReader in, String name) throws IOException {
+		if (in.peek() == JsonToken.BEGIN_ARRAY) {
+			in.beginArray();
+			return new Frame(new TreeNode<>(JsonEntry.array(name)), true);
+		}
+		in.beginObject();
+		return new Frame(new TreeNode<>(JsonEntry.object(name)), false);
+	}
+
+	private static JsonEntry readEntry(JsonReader in, String name) throws IOException {
+		switch (in.peek()) {
+			case NULL:
+				in.nextNull();
+				return JsonEntry.of(name, null);
+			case BOOLEAN:
+				return JsonEntry.of(name, in.nextBoolean());
+			case NUMBER:
+				return JsonEntry.of(name, JsonEntry.parseNumber(in.nextString()));
+			default:
+				return JsonEntry.of(name, in.nextString());
+		}
+	}
+
+	private static String readPrimitive(JsonReader in) throws IOException {
+		switch (in.peek()) {
+			case NULL:
+				in.nextNull();
+				return "null";
+			case BOOLEAN:
+				return String.valueOf(in.nextBoolean());
+			default:
+				return in.nextString();
+		}
+	}
+
+	/** Streaming equivalent of {@link TreeUtils#toAnyJson}; the writer is flushed, not closed */
+	public static void writeAny(TreeNode<Object> node, Writer writer) throws IOException {
+		if (!TreeUtils.isContainer(node)) {
+			writer.write(String.valueOf(TreeUtils.leafValue(node.data)));
+			writer.flush();
+			return;
+		}
+
+		JsonWriter out = new JsonWriter(writer);
+		out.setIndent("  ");
+		out.beginObject();
+		out.name(TreeUtils.keyOf(node.data));
+		ArrayList<AnyFrame> stack = new ArrayList<>();
+		stack.add(openAny(out, node));
+		while (!stack.isEmpty()) {
+			AnyFrame frame = stack.get(stack.size() - 1);
+			if (!frame.children.hasNext()) {
+				if (frame.array)
+					out.endArray();
+				else
+					out.endObject();
+				stack.remove(stack.size() - 1);
+				continue;
+			}
+			TreeNode<Object> child = frame.children.next();
+			if (!frame.array)
+				out.name(TreeUtils.keyOf(child.data));
+			if (!TreeUtils.isContainer(child)) {
+				writeValue(out, TreeUtils.leafValue(child.data));
+			} else {
+				stack.add(openAny(out, child));
+			}
+		}
+		out.endObject();
+		out.flush();
+	}
+
+	private static class AnyFrame {
+		final Iterator<TreeNode<Object>> children;
+		final boolean array;
+
+		AnyFrame(Iterator<TreeNode<Object>> children, boolean array) {
+			this.children = children;
+			this.array = array;
+		}
+	}
+
+	private static AnyFrame openAny(JsonWriter out, TreeNode<Object> node) throws IOException {
+		// Same rule as toAnyJson: typed nodes know their type, otherwise children keyed [0], [1], ... form an array
+		JsonEntry entry = JsonEntry.from(node.data);
+		boolean array = entry == null || entry.type == JsonEntry.ARRAY;
+		if (entry == null) {
+			for (TreeNode<Object> child : node.getChildren()) {
+				if (!TreeUtils.isArrayKey(child.data)) {
+					array = false;
+					break;
+				}
+			}
+		}
+		if (array)
+			out.beginArray();
+		else
+			out.beginObject();
+		return new AnyFrame(node.getChildren().iterator(), array);
+	}
+
+	private static void writeValue(JsonWriter out, Object value) throws IOException {
+		if (value == null || value == JSONObject.NULL) {
+			out.nullValue();
+		} else if (value instanceof Boolean) {
+			out.value((Boolean) value);
+		} else if (value instanceof Number) {
+			out.value((Number) value);
+		} else {
+			out.value(String.valueOf(value));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.hichem.soft.tree.view;
+
+/**
+ * Numbers for one operation of a {@link TreeViewAdapter}: how long it took,
+ * how many rows it bound and how, and how long formatting labels took. Turned
+ * on by {@link TreeViewAdapter#setMetricsListener}; while on, operations and
+ * row binds also show up as {@code android.os.Trace} sections in systrace and
+ * Perfetto. While off, the adapter does not measure anything.
+ *
+ * <p>The adapter reuses one instance, so a listener must copy what it keeps.
+ * Everything runs on the main thread.
+ */
+public class TreeMetrics {
+
+	/** {@link TreeViewAdapter#refresh} */
+	public static final int REFRESH = 0;
+	/** {@link TreeViewAdapter#expandNode} */
+	public static final int EXPAND = 1;
+	/** {@link TreeViewAdapter#collapseNode} */
+	public static final int COLLAPSE = 2;
+	/** Transactions applied on a frame, or by {@link TreeViewAdapter#flushChanges} */
+	public static final int CHANGES = 3;
+	/** A tree from {@link TreeViewAdapter#submitTree} or a snapshot applied */
+	public static final int DIFF = 4;
+	/** A page from the {@link ChildLoader} added */
+	public static final int PAGE_LOADED = 5;
+	/** Rows bound outside the operations above during one frame, e.g. while a ListView scrolls */
+	public static final int BIND = 6;
+
+	private static final String[] NAMES = {"refresh", "expand", "collapse", "changes", "diff", "pageLoaded", "bind"};
+
+	public interface Listener {
+		/** Called after each operation; {@code metrics} is only valid during the call */
+		void onOperation(TreeMetrics metrics);
+	}
+
+	int operation;
+	TreeNode<?> node;
+	boolean active;
+	// An operation's trace section is open, to be closed by the adapter
+	boolean traced;
+	private long startNanos;
+	private long durationNanos;
+	private int rowsBound;
+	private long bindNanos;
+	private long formatNanos;
+	private int viewsCreated;
+	private int viewsReused;
+	private int visibleRows;
+
+	/** Name of an operation, as used for trace sections */
+	public static String nameOf(int operation) {
+		return operation >= 0 && operation < NAMES.length ? NAMES[operation] : "unknown";
+	}
+
+	void begin(int operation, TreeNode<?> node) {
+		this.operation = operation;
+		this.node = node;
+		active = true;
+		rowsBound = viewsCreated = viewsReused = 0;
+		bindNanos = formatNanos = 0;
+		startNanos = System.nanoTime();
+	}
+
+	void end(int visibleRows) {
+		durationNanos = System.nanoTime() - startNanos;
+		this.visibleRows = visibleRows;
+		active = false;
+	}
+
+	void rowBound(long nanos, boolean reused) {
+		rowsBound++;
+		bindNanos += nanos;
+		if (reused)
+			viewsReused++;
+		else
+			viewsCreated++;
+	}
+
+	/** For adapters: adds time spent formatting labels during a bind */
+	public void addFormatNanos(long nanos) {
+		formatNanos += nanos;
+	}
+
+	// === Results ===
+
+	/** One of the operation constants */
+	public int getOperation() {
+		return operation;
+	}
+
+	/** The node expanded or collapsed, or the parent of a loaded page; null otherwise */
+	public TreeNode<?> getNode() {
+		return node;
+	}
+
+	/** Wall time of the whole operation, binds included */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public int getRowsBound() {
+		return rowsBound;
+	}
+
+	/** Time spent in bindView, formatting included */
+	public long getBindNanos() {
+		return bindNanos;
+	}
+
+	/** Time spent formatting and measuring labels; near zero when they were cached */
+	public long getFormatNanos() {
+		return formatNanos;
+	}
+
+	/** Binds that built a new view */
+	public int getViewsCreated() {
+		return viewsCreated;
+	}
+
+	/** Binds that reused a scrapped or recycled view */
+	public int getViewsReused() {
+		return viewsReused;
+	}
+
+	/** Rows in the list once the operation finished */
+	public int getVisibleRows() {
+		return visibleRows;
+	}
+
+	@Override
+	public String toString() {
+		return nameOf(operation) + " " + durationNanos / 1000 + "us, " + rowsBound + " binds in "
+				+ bindNanos / 1000 + "us (format " + formatNanos / 1000 + "us), "
+				+ viewsCreated + " created, " + viewsReused + " reused, " + visibleRows + " rows";
+	}
+}
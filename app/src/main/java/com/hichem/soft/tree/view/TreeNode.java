@@ -2,18 +2,41 @@ package com.hichem.soft.tree.view;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class TreeNode<T> {
 	
 	public T data;
+	/** Prefer {@link #setExpanded}; after writing this directly, call {@link #recomputeCounts} */
 	public boolean expanded = false;
-	private final TreeRoot<T> children = new TreeRoot<>();
+	private final TreeRoot<T> children = new TreeRoot<>(this);
 	public TreeNode<T> parent;
 	
 	// Optional visual elements
 	public int iconResId = -1;
 	public int barColor = -1;
 	
+	// Position in the parent's children (or top-level list), kept by TreeRoot
+	int indexInParent = -1;
+	// The list holding this node, null when detached; kept by TreeRoot
+	TreeRoot<T> list;
+	
+	// Cached aggregates, kept by TreeRoot and setExpanded
+	int depth = 0;
+	int descendantCount = 0;
+	int visibleDescendants = 0;
+	
+	// Lazy loading, see ChildLoader
+	private boolean lazy = false;
+	boolean placeholder = false;
+	TreeNode<T> pendingRow;
+	Future<?> loadTask;
+	Exception loadError;
+	
+	// Label cached by DisplayTextCache, checked against the data and its version
+	Object displayText;
+	int dataVersion;
+	
 	public TreeNode(T data) {
 		this.data = data;
 	}
@@ -26,21 +49,188 @@ public class TreeNode<T> {
 	// === Core ===
 	
 	public void addChild(TreeNode<T> child) {
-		child.parent = this;
 		children.add(child);
 	}
 	
 	public void addChildren(List<TreeNode<T>> list) {
-		for (TreeNode<T> child : list) {
-			child.parent = this;
-			children.add(child);
-		}
+		children.addAll(list);
+	}
+	
+	/** Removes a direct child in O(siblings) using its cached position */
+	public boolean removeChild(TreeNode<T> child) {
+		int position = children.positionOf(child);
+		if (position < 0)
+			return false;
+		children.remove(position);
+		return true;
+	}
+	
+	/** Returns this node's position among its siblings */
+	public int getIndexInParent() {
+		return parent != null ? parent.children.positionOf(this) : indexInParent;
 	}
 	
 	public boolean isEmpty() {
 		return children.isEmpty();
 	}
 	
+	/** Expands or collapses the node, keeping the cached row counts of its ancestors */
+	public void setExpanded(boolean expanded) {
+		if (this.expanded == expanded)
+			return;
+		this.expanded = expanded;
+		rowCountChanged();
+		if (parent != null) {
+			parent.addVisible(expanded ? visibleDescendants : -visibleDescendants);
+		}
+	}
+	
+	/** Marks this node's children as loaded on demand by a ChildLoader */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+	
+	/** Returns true if more children may still be loaded */
+	public boolean isLazy() {
+		return lazy;
+	}
+	
+	/** Returns true if the node has children or can load some */
+	public boolean isExpandable() {
+		return lazy || !children.isEmpty();
+	}
+	
+	/** Returns true for the loading / load-more row shown under a lazy node */
+	public boolean isPlaceholder() {
+		return placeholder;
+	}
+	
+	/** Returns true while a page of children is being loaded */
+	public boolean isLoading() {
+		return loadTask != null;
+	}
+	
+	/** The failure of the last page load, or null; cleared when a load starts or succeeds */
+	public Exception getLoadError() {
+		return loadError;
+	}
+	
+	static <T> TreeNode<T> placeholderFor(TreeNode<T> parent) {
+		TreeNode<T> row = new TreeNode<>(null);
+		row.placeholder = true;
+		row.parent = parent;
+		row.depth = parent.depth + 1;
+		return row;
+	}
+	
+	void setPendingRow(TreeNode<T> row) {
+		if ((pendingRow == null) != (row == null)) {
+			addVisible(row != null ? 1 : -1);
+		}
+		pendingRow = row;
+	}
+	
+	// === Aggregate maintenance ===
+	
+	/** Number of rows this node occupies: itself plus its visible subtree */
+	int rowCount() {
+		return 1 + (expanded ? visibleDescendants : 0);
+	}
+	
+	void childAttached(TreeNode<T> child) {
+		child.setDepth(depth + 1);
+		int nodes = 1 + child.descendantCount;
+		for (TreeNode<T> n = this; n != null; n = n.parent) {
+			n.descendantCount += nodes;
+		}
+		addVisible(child.rowCount());
+	}
+	
+	void childDetached(TreeNode<T> child) {
+		int nodes = 1 + child.descendantCount;
+		for (TreeNode<T> n = this; n != null; n = n.parent) {
+			n.descendantCount -= nodes;
+		}
+		addVisible(-child.rowCount());
+	}
+	
+	/** Adds to this node's visible count, and upward while the chain is expanded */
+	private void addVisible(int delta) {
+		TreeNode<T> n = this;
+		while (n != null && delta != 0) {
+			n.visibleDescendants += delta;
+			if (!n.expanded)
+				break;
+			n.rowCountChanged();
+			n = n.parent;
+		}
+	}
+	
+	/** Drops the list's prefix sums that include this node's rows */
+	private void rowCountChanged() {
+		if (list != null && indexInParent >= 0)
+			list.rowsChanged(indexInParent);
+	}
+	
+	void setDepth(int newDepth) {
+		if (depth == newDepth)
+			return;
+		ArrayList<TreeNode<T>> stack = new ArrayList<>();
+		depth = newDepth;
+		stack.add(this);
+		while (!stack.isEmpty()) {
+			TreeNode<T> node = stack.remove(stack.size() - 1);
+			for (TreeNode<T> child : node.children) {
+				child.depth = node.depth + 1;
+				stack.add(child);
+			}
+		}
+	}
+	
+	/**
+	 * Recomputes the cached depth and counts of this subtree and fixes its
+	 * ancestors. Only needed after writing {@code expanded} or editing child
+	 * lists in ways TreeRoot does not track.
+	 */
+	public void recomputeCounts() {
+		int oldNodes = descendantCount;
+		int oldRows = rowCount();
+		
+		// Iterative post-order so deep trees cannot overflow the stack
+		depth = parent != null ? parent.depth + 1 : 0;
+		ArrayList<TreeNode<T>> order = new ArrayList<>();
+		ArrayList<TreeNode<T>> stack = new ArrayList<>();
+		stack.add(this);
+		while (!stack.isEmpty()) {
+			TreeNode<T> node = stack.remove(stack.size() - 1);
+			order.add(node);
+			for (TreeNode<T> child : node.children) {
+				child.depth = node.depth + 1;
+				stack.add(child);
+			}
+		}
+		for (int i = order.size() - 1; i >= 0; i--) {
+			TreeNode<T> node = order.get(i);
+			int nodes = 0;
+			int rows = node.pendingRow != null ? 1 : 0;
+			for (TreeNode<T> child : node.children) {
+				nodes += 1 + child.descendantCount;
+				rows += child.rowCount();
+			}
+			node.descendantCount = nodes;
+			node.visibleDescendants = rows;
+			node.children.rowsChanged(0);
+		}
+		rowCountChanged();
+		
+		if (parent != null) {
+			for (TreeNode<T> n = parent; n != null; n = n.parent) {
+				n.descendantCount += descendantCount - oldNodes;
+			}
+			parent.addVisible(rowCount() - oldRows);
+		}
+	}
+	
 	public TreeRoot<T> getChildren() {
 		return children;
 	}
@@ -52,9 +242,13 @@ public class TreeNode<T> {
 		return data;
 	}
 	
-	/** Sets the node's data */
+	/** Sets the node's data, re-keying it if the tree is indexed and dropping its cached label */
 	public void setData(T data) {
+		if (children.index != null) {
+			children.index.rekey(this, this.data, data);
+		}
 		this.data = data;
+		dataVersion++;
 	}
 	
 	/** Returns true if this node has no parent */
@@ -77,15 +271,9 @@ public class TreeNode<T> {
 		return children.isEmpty();
 	}
 	
-	/** Returns the depth level of this node (0 = root) */
+	/** Returns the depth level of this node (0 = root), cached */
 	public int getLevel() {
-		int level = 0;
-		TreeNode<T> current = this.parent;
-		while (current != null) {
-			level++;
-			current = current.parent;
-		}
-		return level;
+		return depth;
 	}
 	
 	/** Returns the root node of this tree */
@@ -113,17 +301,23 @@ public class TreeNode<T> {
 		return children.size();
 	}
 	
-	/** Returns the number of all descendants */
+	/** Returns the number of all descendants, cached */
 	public int getDescendantCount() {
-		int count = children.size();
-		for (TreeNode<T> child : children) {
-			count += child.getDescendantCount();
-		}
-		return count;
+		return descendantCount;
+	}
+	
+	/** Returns the number of rows shown below this node while it is expanded */
+	public int getVisibleDescendantCount() {
+		return visibleDescendants;
 	}
 	
 	/** Finds the first child with matching data (equals) */
 	public TreeNode<T> findChildByData(T target) {
+		if (children.index != null) {
+			TreeNode<T> hit = children.index.get(children.index.keyOf(target));
+			if (hit != null && hit.parent == this)
+				return hit;
+		}
 		for (TreeNode<T> child : children) {
 			if ((child.data == null && target == null) ||
 			(child.data != null && child.data.equals(target))) {
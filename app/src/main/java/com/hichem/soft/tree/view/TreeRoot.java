@@ -1,11 +1,62 @@
 package com.hichem.soft.tree.view;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 public class TreeRoot<T> extends ArrayList<TreeNode<T>> {
 
+	// Shared by all lists of an indexed tree, null when not indexed
+	NodeIndex<T> index;
+	// The node whose children this is, null for the top-level list
+	final TreeNode<T> owner;
+	// rowsBefore[i] is the number of rows of the nodes before position i,
+	// valid for i < rowsValid; see rowsBefore(int)
+	private int[] rowsBefore;
+	private int rowsValid;
+
 	public TreeRoot() {
 		super();
+		this.owner = null;
+	}
+
+	TreeRoot(TreeNode<T> owner) {
+		super();
+		this.owner = owner;
+	}
+
+	/**
+	 * Enables O(1) lookup by key for this tree. The index follows add, addAll,
+	 * remove, set and clear on this list and on every child list, and
+	 * {@link TreeNode#setData}. Pass null to drop the index.
+	 */
+	public void setKeyExtractor(KeyExtractor<T> extractor) {
+		if (index != null) {
+			for (TreeNode<T> node : this) {
+				index.removeSubtree(node);
+			}
+			index = null;
+		}
+		if (extractor == null)
+			return;
+		index = new NodeIndex<>(this, extractor);
+		for (TreeNode<T> node : this) {
+			index.addSubtree(node);
+		}
+	}
+
+	/** Returns true if this is the top-level list of an indexed tree */
+	public boolean isIndexed() {
+		return index != null && index.root == this;
+	}
+
+	/** Looks up a node by key; requires {@link #setKeyExtractor} */
+	public TreeNode<T> findNodeByKey(Object key) {
+		if (index == null)
+			throw new IllegalStateException("TreeRoot has no KeyExtractor");
+		return index.get(key);
 	}
 
 	public TreeNode<T> addNode(T data) {
@@ -15,37 +66,257 @@ public class TreeRoot<T> extends ArrayList<TreeNode<T>> {
 	}
 
 	public TreeNode<T> findNodeByData(T data) {
-		for (TreeNode<T> node : this) {
-			TreeNode<T> result = findInTree(node, data);
-			if (result != null) return result;
+		if (isIndexed())
+			return index.get(index.keyOf(data));
+		for (TreeNode<T> node : TreeTraversal.iterate(this, TreeTraversal.Order.PRE_ORDER)) {
+			if (node.data.equals(data)) return node;
 		}
 		return null;
 	}
 
-	private TreeNode<T> findInTree(TreeNode<T> node, T data) {
-		if (node.data.equals(data)) return node;
-		for (TreeNode<T> child : node.getChildren()) {
-			TreeNode<T> result = findInTree(child, data);
-			if (result != null) return result;
+	/** Returns the position of the node in this list, or -1 */
+	public int positionOf(TreeNode<T> node) {
+		int i = node.indexInParent;
+		if (i >= 0 && i < size() && get(i) == node) return i;
+		// Stale cache (list edited through an untracked method), repair it
+		for (i = 0; i < size(); i++) {
+			get(i).indexInParent = i;
 		}
-		return null;
+		rowsValid = 0;
+		i = node.indexInParent;
+		return i >= 0 && i < size() && get(i) == node ? i : -1;
 	}
 
+	/**
+	 * Removes the node from its parent, or from this list if it is a
+	 * top-level node. Costs O(siblings), independent of the tree size.
+	 */
 	public boolean removeNode(TreeNode<T> target) {
+		TreeRoot<T> list = listOf(target);
+		int position = list.positionOf(target);
+		if (position < 0) return false;
+		list.remove(position);
+		return true;
+	}
+
+	/** Removes many nodes with one pass over each affected sibling list */
+	public void removeNodes(Collection<TreeNode<T>> targets) {
+		Map<TreeRoot<T>, Map<TreeNode<T>, Boolean>> byList = new IdentityHashMap<>();
+		for (TreeNode<T> target : targets) {
+			TreeRoot<T> list = listOf(target);
+			Map<TreeNode<T>, Boolean> set = byList.get(list);
+			if (set == null) {
+				set = new IdentityHashMap<>();
+				byList.put(list, set);
+			}
+			set.put(target, Boolean.TRUE);
+		}
+		for (Map.Entry<TreeRoot<T>, Map<TreeNode<T>, Boolean>> entry : byList.entrySet()) {
+			entry.getKey().removeAllOf(entry.getValue());
+		}
+	}
+
+	/**
+	 * Moves the node under a new parent (null for top level) at the given
+	 * position, or at the end if position is -1.
+	 */
+	public void moveNode(TreeNode<T> node, TreeNode<T> newParent, int position) {
+		for (TreeNode<T> p = newParent; p != null; p = p.parent) {
+			if (p == node) throw new IllegalArgumentException("Cannot move a node into its own subtree");
+		}
+		TreeRoot<T> from = listOf(node);
+		TreeRoot<T> to = newParent != null ? newParent.getChildren() : this;
+		int oldPosition = from.positionOf(node);
+		if (oldPosition < 0) throw new IllegalArgumentException("Node is not in this tree");
+		if (position < 0) position = to.size();
+		if (from == to && oldPosition < position) position--;
+
+		if (from.index != null && from.index == to.index) {
+			// Same indexed tree: keys stay valid, skip re-registering the subtree
+			from.detach(oldPosition);
+			to.attach(position, node);
+		} else {
+			from.remove(oldPosition);
+			to.add(position, node);
+		}
+	}
+
+	private TreeRoot<T> listOf(TreeNode<T> node) {
+		return node.parent != null ? node.parent.getChildren() : this;
+	}
+
+	private void removeAllOf(Map<TreeNode<T>, Boolean> targets) {
+		ArrayList<TreeNode<T>> kept = new ArrayList<>(size());
 		for (TreeNode<T> node : this) {
-			if (node == target) {
-				return remove(node);
+			if (targets.containsKey(node)) {
+				released(node);
+				if (index != null) index.removeSubtree(node);
+			} else {
+				kept.add(node);
 			}
-			if (removeFromChildren(node, target)) return true;
 		}
-		return false;
+		super.clear();
+		super.addAll(kept);
+		renumber(0);
+	}
+
+	// === Parent, position and index maintenance ===
+
+	/**
+	 * Rows taken by the nodes before the position, from prefix sums kept
+	 * across calls. Sums are only extended past the last change, so repeated
+	 * lookups in a list do not add up its siblings again.
+	 */
+	int rowsBefore(int position) {
+		if (rowsBefore == null || rowsBefore.length <= position) {
+			int length = Math.max(position + 1, size() + 1);
+			rowsBefore = rowsBefore == null ? new int[length] : Arrays.copyOf(rowsBefore, length);
+		}
+		if (rowsValid == 0) {
+			rowsBefore[0] = 0;
+			rowsValid = 1;
+		}
+		while (rowsValid <= position) {
+			rowsBefore[rowsValid] = rowsBefore[rowsValid - 1] + get(rowsValid - 1).rowCount();
+			rowsValid++;
+		}
+		return rowsBefore[position];
 	}
 
-	private boolean removeFromChildren(TreeNode<T> parent, TreeNode<T> target) {
-		if (parent.getChildren().remove(target)) return true;
-		for (TreeNode<T> child : parent.getChildren()) {
-			if (removeFromChildren(child, target)) return true;
+	/** Drops the prefix sums that include the node at the position, after its row count or the list changed */
+	void rowsChanged(int position) {
+		if (rowsValid > position + 1)
+			rowsValid = position + 1;
+	}
+
+	private void adopted(TreeNode<T> node) {
+		node.list = this;
+		if (owner != null) {
+			node.parent = owner;
+			owner.childAttached(node);
+		} else {
+			node.setDepth(0);
+		}
+	}
+
+	private void released(TreeNode<T> node) {
+		if (owner != null) {
+			owner.childDetached(node);
+			if (node.parent == owner) node.parent = null;
+		}
+		if (node.list == this) node.list = null;
+		node.indexInParent = -1;
+	}
+
+	/**
+	 * Appends a node of a tree being built, without touching counts, depth or
+	 * the index. The builder computes them once the tree is complete.
+	 */
+	void appendDetached(TreeNode<T> node) {
+		super.add(node);
+		node.parent = owner;
+		node.list = this;
+		node.indexInParent = size() - 1;
+	}
+
+	private void renumber(int from) {
+		rowsChanged(from);
+		for (int i = from; i < size(); i++) {
+			get(i).indexInParent = i;
+		}
+	}
+
+	private void detach(int position) {
+		released(super.remove(position));
+		renumber(position);
+	}
+
+	private void attach(int position, TreeNode<T> node) {
+		super.add(position, node);
+		adopted(node);
+		renumber(position);
+	}
+
+	@Override
+	public boolean add(TreeNode<T> node) {
+		super.add(node);
+		adopted(node);
+		node.indexInParent = size() - 1;
+		if (index != null) index.addSubtree(node);
+		return true;
+	}
+
+	@Override
+	public void add(int position, TreeNode<T> node) {
+		super.add(position, node);
+		adopted(node);
+		renumber(position);
+		if (index != null) index.addSubtree(node);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends TreeNode<T>> nodes) {
+		int start = size();
+		boolean changed = super.addAll(nodes);
+		for (TreeNode<T> node : nodes) adopted(node);
+		renumber(start);
+		if (index != null) {
+			for (TreeNode<T> node : nodes) index.addSubtree(node);
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean addAll(int position, Collection<? extends TreeNode<T>> nodes) {
+		boolean changed = super.addAll(position, nodes);
+		for (TreeNode<T> node : nodes) adopted(node);
+		renumber(position);
+		if (index != null) {
+			for (TreeNode<T> node : nodes) index.addSubtree(node);
+		}
+		return changed;
+	}
+
+	@Override
+	public TreeNode<T> remove(int position) {
+		TreeNode<T> node = super.remove(position);
+		released(node);
+		renumber(position);
+		if (index != null) index.removeSubtree(node);
+		return node;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean remove(Object node) {
+		if (!(node instanceof TreeNode)) return false;
+		int position = positionOf((TreeNode<T>) node);
+		if (position < 0) return false;
+		remove(position);
+		return true;
+	}
+
+	@Override
+	public TreeNode<T> set(int position, TreeNode<T> node) {
+		TreeNode<T> old = super.set(position, node);
+		released(old);
+		adopted(node);
+		node.indexInParent = position;
+		rowsChanged(position);
+		if (index != null) {
+			index.removeSubtree(old);
+			index.addSubtree(node);
+		}
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		for (TreeNode<T> node : this) {
+			released(node);
+			if (index != null) index.removeSubtree(node);
 		}
-		return false;
+		super.clear();
+		rowsValid = 0;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+package com.hichem.soft.tree.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.text.TextPaint;
+import android.view.View;
+
+/**
+ * Single-view tree row. Draws what LinearCard, LinearRow, the bar, icon,
+ * label and +/- views used to build: the card, guide lines, color bar, icon,
+ * label pill and expand indicator, with no child views to measure or lay out.
+ * Paints and drawables come from a shared {@link TreeStyle}.
+ */
+public class TreeRowView extends View {
+
+	private final TreeStyle style;
+	private final RectF rect = new RectF();
+
+	private TreeNode<?> node;
+	private int level;
+	private String label = "";
+	private float labelWidth;
+	private int iconResId = -1;
+	private Drawable icon;
+	private int barColor;
+	private int indicatorColor;
+	private boolean expanded;
+	// Highlighted part of the label, measured from its start; empty if equal
+	private float highlightLeft;
+	private float highlightRight;
+
+	public TreeRowView(Context context) {
+		this(context, new TreeStyle(context));
+	}
+
+	/** Rows of one adapter should share a style */
+	public TreeRowView(Context context, TreeStyle style) {
+		super(context);
+		this.style = style;
+	}
+
+	public TreeStyle getStyle() {
+		return style;
+	}
+
+	/** Points the row at a node; cheap enough to call on every rebind */
+	public void bind(TreeNode<?> node, int level, String label) {
+		bind(node, level, label, node.expanded);
+	}
+
+	/** Binds with the expanded state shown by the list, which a filter may override */
+	public void bind(TreeNode<?> node, int level, String label, boolean expanded) {
+		float width = label.equals(this.label) ? labelWidth : style.labelPaint.measureText(label);
+		bind(node, level, label, width, expanded);
+	}
+
+	/** Binds a label already measured with the style's label paint, see {@link DisplayTextCache} */
+	public void bind(TreeNode<?> node, int level, String label, float labelWidth, boolean expanded) {
+		this.node = node;
+		this.level = level;
+		this.expanded = expanded;
+		this.label = label;
+		this.labelWidth = labelWidth;
+		boolean hadIcon = icon != null;
+		if (node.iconResId != iconResId) {
+			iconResId = node.iconResId;
+			icon = style.icon(iconResId);
+		}
+		barColor = node.barColor != -1 ? node.barColor : (node.isEmpty() ? Color.GRAY : Color.TRANSPARENT);
+		indicatorColor = expanded ? Color.LTGRAY : Color.DKGRAY;
+		highlightLeft = highlightRight = 0;
+		// Only the icon changes the measured height, see onMeasure
+		if ((icon != null) != hadIcon)
+			requestLayout();
+		invalidate();
+	}
+
+	/** Highlights label characters [start, end), e.g. a search match; call after bind */
+	public void setHighlight(int start, int end) {
+		start = Math.max(0, Math.min(start, label.length()));
+		end = Math.max(start, Math.min(end, label.length()));
+		highlightLeft = style.labelPaint.measureText(label, 0, start);
+		highlightRight = style.labelPaint.measureText(label, 0, end);
+		invalidate();
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		int content = Math.max(icon != null ? TreeStyle.ICON_SIZE : 0, Math.round(style.labelHeight));
+		int height = content + 2 * TreeStyle.VERTICAL_PADDING;
+		setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+				resolveSize(height, heightMeasureSpec));
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		int width = getWidth();
+		int height = getHeight();
+
+		// Card
+		rect.set(TreeStyle.ELEVATION, TreeStyle.ELEVATION, width - TreeStyle.ELEVATION, height - TreeStyle.ELEVATION);
+		canvas.drawRoundRect(rect, TreeStyle.CORNER_RADIUS, TreeStyle.CORNER_RADIUS, style.shadowPaint);
+		canvas.drawRoundRect(rect, TreeStyle.CORNER_RADIUS, TreeStyle.CORNER_RADIUS, style.cardPaint);
+
+		if (node == null)
+			return;
+		drawGuideLines(canvas, height);
+
+		float centerY = height / 2f;
+		float x = TreeStyle.BASE_PADDING + level * TreeStyle.LEVEL_SPACING;
+
+		// Color bar
+		style.barPaint.setColor(barColor);
+		canvas.drawRect(x, TreeStyle.VERTICAL_PADDING, x + TreeStyle.BAR_WIDTH, height - TreeStyle.VERTICAL_PADDING, style.barPaint);
+		x += TreeStyle.BAR_WIDTH + TreeStyle.GAP;
+
+		// Icon
+		if (icon != null) {
+			int top = Math.round(centerY - TreeStyle.ICON_SIZE / 2f);
+			icon.setBounds((int) x, top, (int) x + TreeStyle.ICON_SIZE, top + TreeStyle.ICON_SIZE);
+			icon.draw(canvas);
+			x += TreeStyle.ICON_SIZE;
+		}
+
+		// Label pill
+		float pillHeight = style.labelHeight;
+		TextPaint labelPaint = style.labelPaint;
+		rect.set(x, centerY - pillHeight / 2f, x + labelWidth + 2 * style.pillPaddingH, centerY + pillHeight / 2f);
+		canvas.drawRoundRect(rect, style.pillRadius, style.pillRadius, style.pillPaint);
+		canvas.drawRoundRect(rect, style.pillRadius, style.pillRadius, style.pillStrokePaint);
+		if (highlightRight > highlightLeft) {
+			canvas.drawRect(x + style.pillPaddingH + highlightLeft, rect.top + style.pillPaddingV,
+					x + style.pillPaddingH + highlightRight, rect.bottom - style.pillPaddingV, style.highlightPaint);
+		}
+		float baseline = centerY - (labelPaint.descent() + labelPaint.ascent()) / 2f;
+		canvas.drawText(label, x + style.pillPaddingH, baseline, labelPaint);
+		x = rect.right;
+
+		// Expand indicator
+		if (node.isExpandable()) {
+			style.indicatorPaint.setColor(indicatorColor);
+			canvas.drawText(expanded ? "  -" : "  +", x, baseline, style.indicatorPaint);
+		}
+	}
+
+	/** Same connector lines LinearRow draws */
+	private void drawGuideLines(Canvas canvas, int height) {
+		int currentX = TreeStyle.BASE_PADDING + level * TreeStyle.LEVEL_SPACING;
+		int nextX = TreeStyle.BASE_PADDING + level + TreeStyle.LEVEL_SPACING;
+		int parentX = TreeStyle.BASE_PADDING + (level - 1) * TreeStyle.LEVEL_SPACING;
+		int centerY = height / 2 + 2;
+		Paint linePaint = style.linePaint;
+
+		boolean root = node.isRootNode();
+		boolean notLast = isNotLastInParent();
+		if (!root) {
+			canvas.drawLine(parentX, centerY, currentX - 3, centerY, linePaint);
+			canvas.drawLine(parentX, 0, parentX, centerY, linePaint);
+		}
+		if (expanded) {
+			canvas.drawLine(currentX, centerY, currentX + 8, centerY, linePaint);
+		}
+		if (!root && notLast && node.isEmpty()) {
+			canvas.drawLine(nextX - 2, centerY, nextX - 2, height, linePaint);
+		}
+		if (notLast && !root && expanded) {
+			canvas.drawLine(nextX - 1, centerY - 2, nextX - 1, height, linePaint);
+		}
+		if (root && expanded) {
+			canvas.drawLine(currentX, centerY - 2, currentX, height, linePaint);
+		}
+	}
+
+	private boolean isNotLastInParent() {
+		if (node.parent == null || !node.isEmpty())
+			return true;
+		TreeRoot<?> siblings = node.parent.getChildren();
+		return node != siblings.get(siblings.size() - 1);
+	}
+}
@@ -0,0 +1,440 @@
+package com.hichem.soft.tree.view;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Type-ahead search over the display text of a tree. Queries run on a
+ * background thread, and starting a new one cancels the previous one. The
+ * {@link Result} is a {@link VisibleNodeList.Filter}: pass it to
+ * {@link TreeViewAdapter#setFilter} to show only the matches and the paths
+ * leading to them, expanded, without touching the nodes' own state.
+ *
+ * <p>Terms ignore case and match the start of a word, or anywhere if they
+ * start with a character that is not a letter or digit. Without an index
+ * every query formats and scans every node; {@link #buildIndex} keeps a
+ * sorted word list that finds the same matches without the scan. The tree
+ * must not be edited while a query or index build runs; call
+ * {@link #invalidateIndex} after editing it.
+ */
+public class TreeSearch<T> {
+
+	public interface Callback<T> {
+		/** Called on the main thread, only for the latest query */
+		void onResult(Result<T> result);
+	}
+
+	private final TreeRoot<T> roots;
+	private final ObjectTreeAdapter.Formatter<T> formatter;
+	private final ExecutorService executor;
+	// True for the default executor, which release() shuts down
+	private final boolean ownsExecutor;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+	private volatile Index<T> index;
+	private Future<?> pending;
+	private int generation;
+
+	/** Searches on a thread of its own; call {@link #release} when done */
+	public TreeSearch(TreeRoot<T> roots, ObjectTreeAdapter.Formatter<T> formatter) {
+		this(roots, formatter, Executors.newSingleThreadExecutor(), true);
+	}
+
+	/** The formatter is called from the executor's threads */
+	public TreeSearch(TreeRoot<T> roots, ObjectTreeAdapter.Formatter<T> formatter, ExecutorService executor) {
+		this(roots, formatter, executor, false);
+	}
+
+	private TreeSearch(TreeRoot<T> roots, ObjectTreeAdapter.Formatter<T> formatter, ExecutorService executor, boolean ownsExecutor) {
+		this.roots = roots;
+		this.formatter = formatter;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	// === Index ===
+
+	/** Builds the word index on the search thread; queries submitted later use it */
+	public Future<?> buildIndex() {
+		return executor.submit(() -> {
+			index = new Index<>(roots, formatter);
+		});
+	}
+
+	/** Drops the index after the tree changed; queries scan until it is rebuilt */
+	public void invalidateIndex() {
+		index = null;
+	}
+
+	public boolean isIndexed() {
+		return index != null;
+	}
+
+	// === Queries ===
+
+	/**
+	 * Runs the query in the background and delivers the result on the main
+	 * thread. A pending query is cancelled, and results of older queries are
+	 * dropped. An empty query yields a result that matches nothing.
+	 */
+	public void search(String query, Callback<T> callback) {
+		cancel();
+		final int current = generation;
+		pending = executor.submit(() -> {
+			Result<T> result;
+			try {
+				result = searchNow(query);
+			} catch (CancellationException e) {
+				return;
+			}
+			mainHandler.post(() -> {
+				if (current == generation)
+					callback.onResult(result);
+			});
+		});
+	}
+
+	/** Cancels the pending query, its callback will not run */
+	public void cancel() {
+		generation++;
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+
+	/** Cancels the pending query and stops the default search thread; an executor passed in is left running */
+	public void release() {
+		cancel();
+		if (ownsExecutor)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * Evaluates the query on the calling thread. Throws CancellationException
+	 * if the thread is interrupted.
+	 */
+	public Result<T> searchNow(String query) {
+		String[] terms = split(query);
+		Set<TreeNode<T>> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (terms.length > 0) {
+			Index<T> idx = index;
+			if (idx != null)
+				idx.query(terms, matches);
+			else
+				scan(terms, matches);
+		}
+
+		// Ancestors of matches, each added once
+		Set<TreeNode<T>> paths = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (TreeNode<T> match : matches) {
+			for (TreeNode<T> p = match.parent; p != null && paths.add(p); p = p.parent) {
+			}
+		}
+		return new Result<>(query, terms, matches, paths);
+	}
+
+	private void scan(String[] terms, Set<TreeNode<T>> matches) {
+		int visited = 0;
+		for (TreeNode<T> node : TreeTraversal.iterate(roots, TreeTraversal.Order.PRE_ORDER)) {
+			if ((++visited & 1023) == 0)
+				checkCancelled();
+			String text = displayText(formatter, node);
+			boolean all = true;
+			for (String term : terms) {
+				if (find(text, term) < 0) {
+					all = false;
+					break;
+				}
+			}
+			if (all)
+				matches.add(node);
+		}
+	}
+
+	private static void checkCancelled() {
+		if (Thread.currentThread().isInterrupted())
+			throw new CancellationException();
+	}
+
+	static <T> String displayText(ObjectTreeAdapter.Formatter<T> formatter, TreeNode<T> node) {
+		return formatter != null ? formatter.getDisplayText(node.data) : String.valueOf(node.data);
+	}
+
+	private static String[] split(String query) {
+		if (query == null)
+			return new String[0];
+		ArrayList<String> terms = new ArrayList<>();
+		for (String term : fold(query).trim().split("\\s+")) {
+			if (!term.isEmpty())
+				terms.add(term);
+		}
+		return terms.toArray(new String[0]);
+	}
+
+	// === Matching ===
+
+	/**
+	 * Position of the first match of the term in the text, ignoring case, or
+	 * -1. The position is in the text as given, so it can be highlighted.
+	 */
+	static int find(String text, String term) {
+		boolean anywhere = !Character.isLetterOrDigit(term.charAt(0));
+		for (int i = 0; i + term.length() <= text.length(); i++) {
+			if ((anywhere || i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+					&& text.regionMatches(true, i, term, 0, term.length()))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Lower case char by char, equal where {@code regionMatches(true, ...)}
+	 * is. Unlike {@code toLowerCase} it never changes the length.
+	 */
+	private static String fold(String text) {
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+
+	/** The letters and digits the term starts with, what the word index can look up */
+	private static String leadingWord(String term) {
+		int end = 0;
+		while (end < term.length() && Character.isLetterOrDigit(term.charAt(end)))
+			end++;
+		return term.substring(0, end);
+	}
+
+	// === Word index ===
+
+	/** Sorted distinct words with the ids of the nodes containing them */
+	private static class Index<T> {
+		final ObjectTreeAdapter.Formatter<T> formatter;
+		final ArrayList<TreeNode<T>> nodes = new ArrayList<>();
+		final String[] words;
+		final int[][] postings;
+
+		Index(TreeRoot<T> roots, ObjectTreeAdapter.Formatter<T> formatter) {
+			this.formatter = formatter;
+			// (word, node id) pairs, sorted and grouped by word
+			ArrayList<String> pairWords = new ArrayList<>();
+			IntList pairNodes = new IntList();
+			for (TreeNode<T> node : TreeTraversal.iterate(roots, TreeTraversal.Order.PRE_ORDER)) {
+				checkCancelled();
+				int id = nodes.size();
+				nodes.add(node);
+				String text = fold(displayText(formatter, node));
+				int start = -1;
+				for (int i = 0; i <= text.length(); i++) {
+					boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+					if (word && start < 0) {
+						start = i;
+					} else if (!word && start >= 0) {
+						pairWords.add(text.substring(start, i));
+						pairNodes.add(id);
+						start = -1;
+					}
+				}
+			}
+
+			Integer[] order = new Integer[pairWords.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> {
+				int c = pairWords.get(a).compareTo(pairWords.get(b));
+				return c != 0 ? c : Integer.compare(pairNodes.get(a), pairNodes.get(b));
+			});
+
+			ArrayList<String> distinct = new ArrayList<>();
+			ArrayList<int[]> lists = new ArrayList<>();
+			IntList current = new IntList();
+			for (int i = 0; i < order.length; i++) {
+				String word = pairWords.get(order[i]);
+				int id = pairNodes.get(order[i]);
+				if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).equals(word)) {
+					if (!distinct.isEmpty())
+						lists.add(current.toArray());
+					distinct.add(word);
+					current = new IntList();
+				}
+				if (current.size == 0 || current.get(current.size - 1) != id)
+					current.add(id);
+			}
+			if (!distinct.isEmpty())
+				lists.add(current.toArray());
+			words = distinct.toArray(new String[0]);
+			postings = lists.toArray(new int[0][]);
+		}
+
+		/**
+		 * Nodes where every term matches. Words prefixed by the term's leading
+		 * word give the candidates; terms with more than a word are checked on
+		 * the candidates' text.
+		 */
+		void query(String[] terms, Set<TreeNode<T>> out) {
+			boolean[] result = null;
+			for (String term : terms) {
+				checkCancelled();
+				boolean[] hits = new boolean[nodes.size()];
+				String word = leadingWord(term);
+				if (word.isEmpty()) {
+					Arrays.fill(hits, true);
+				} else {
+					int i = lowerBound(word);
+					for (; i < words.length && words[i].startsWith(word); i++) {
+						for (int id : postings[i]) {
+							hits[id] = true;
+						}
+					}
+				}
+				if (word.length() < term.length()) {
+					for (int id = 0; id < hits.length; id++) {
+						if ((id & 1023) == 0)
+							checkCancelled();
+						if (hits[id] && (result == null || result[id]))
+							hits[id] = find(displayText(formatter, nodes.get(id)), term) >= 0;
+					}
+				}
+				if (result == null) {
+					result = hits;
+				} else {
+					for (int n = 0; n < result.length; n++) {
+						result[n] &= hits[n];
+					}
+				}
+			}
+			for (int n = 0; n < result.length; n++) {
+				if (result[n])
+					out.add(nodes.get(n));
+			}
+		}
+
+		private int lowerBound(String term) {
+			int lo = 0;
+			int hi = words.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (words[mid].compareTo(term) < 0)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+
+	private static class IntList {
+		int[] data = new int[16];
+		int size;
+
+		void add(int v) {
+			if (size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = v;
+		}
+
+		int get(int i) {
+			return data[i];
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	// === Result ===
+
+	/**
+	 * Matching nodes and their ancestors. As a filter it shows the ancestors
+	 * expanded, their children narrowed to matches and other ancestors, and
+	 * the subtree of a match as usual. Expanding or collapsing an ancestor is
+	 * remembered here, not on the node.
+	 */
+	public static class Result<T> implements VisibleNodeList.Filter<T> {
+		private final String query;
+		private final String[] terms;
+		private final Set<TreeNode<T>> matches;
+		private final Set<TreeNode<T>> paths;
+		private final Set<TreeNode<T>> collapsedPaths = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		Result(String query, String[] terms, Set<TreeNode<T>> matches, Set<TreeNode<T>> paths) {
+			this.query = query;
+			this.terms = terms;
+			this.matches = matches;
+			this.paths = paths;
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		public int getMatchCount() {
+			return matches.size();
+		}
+
+		public boolean isMatch(TreeNode<T> node) {
+			return matches.contains(node);
+		}
+
+		/** Matches in tree order */
+		public List<TreeNode<T>> getMatches(TreeRoot<T> roots) {
+			ArrayList<TreeNode<T>> list = new ArrayList<>(matches.size());
+			TreeTraversal.walk(roots, TreeTraversal.Order.PRE_ORDER, node -> {
+				if (matches.contains(node))
+					list.add(node);
+				// Subtrees without matches are not entered
+				return paths.contains(node) ? TreeTraversal.Action.CONTINUE : TreeTraversal.Action.SKIP_CHILDREN;
+			});
+			return list;
+		}
+
+		/**
+		 * Returns {start, end} of the first term in the text, matched as by the
+		 * query, or null. Meant for highlighting the label of a match.
+		 */
+		public int[] highlight(String text) {
+			if (terms.length == 0 || text == null)
+				return null;
+			int start = find(text, terms[0]);
+			return start < 0 ? null : new int[] { start, start + terms[0].length() };
+		}
+
+		@Override
+		public boolean accept(TreeNode<T> node) {
+			if (matches.contains(node) || paths.contains(node))
+				return true;
+			// Below a match that is not itself on a path, show everything
+			return node.parent != null && !paths.contains(node.parent);
+		}
+
+		@Override
+		public boolean isExpanded(TreeNode<T> node) {
+			return paths.contains(node) ? !collapsedPaths.contains(node) : node.expanded;
+		}
+
+		@Override
+		public void setExpanded(TreeNode<T> node, boolean expanded) {
+			if (!paths.contains(node)) {
+				node.setExpanded(expanded);
+			} else if (expanded) {
+				collapsedPaths.remove(node);
+			} else {
+				collapsedPaths.add(node);
+			}
+		}
+	}
+}
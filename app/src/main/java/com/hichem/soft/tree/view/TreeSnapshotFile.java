@@ -0,0 +1,323 @@
+package com.hichem.soft.tree.view;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Binary snapshot of a tree that opens without parsing: written once with
+ * {@link #write}, then mapped with {@link #open} and decoded only as far as
+ * rows are shown. Opening costs a header check; {@link #createRoots} and
+ * {@link #childLoader} build nodes for the expanded part of the tree and load
+ * the rest page by page as it is expanded, the same way
+ * {@link CompactTreeStore} does.
+ *
+ * <p>Data is stored as {@code String.valueOf(data)}, like
+ * {@link TreeUtils#toJson}, so the tree reads back as {@code TreeRoot<String>}.
+ * Layout, big-endian:
+ * <pre>
+ * header   magic, version, node count, root count, style count, string count
+ * nodes    per node in breadth-first order: string index (-1 for null),
+ *          first child, child count, expanded bit | style index
+ * styles   icon resource id and bar color per distinct pair, 0 is (-1, -1)
+ * strings  string count + 1 offsets into the UTF-8 bytes that follow
+ * </pre>
+ * Breadth-first order keeps the children of a node next to each other, so
+ * any page of children is found without reading its siblings.
+ */
+public class TreeSnapshotFile {
+
+	private static final int MAGIC = 0x54534E50;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int NODE_SIZE = 16;
+	private static final int STYLE_SIZE = 8;
+	private static final int EXPANDED = 0x80000000;
+
+	/** A node read from a snapshot */
+	static class NodeView extends TreeNode<String> {
+		final TreeSnapshotFile file;
+		final int record;
+
+		NodeView(TreeSnapshotFile file, int record) {
+			super(file.data(record));
+			this.file = file;
+			this.record = record;
+			int packed = file.buffer.getInt(file.nodeOffset(record) + 12);
+			this.expanded = (packed & EXPANDED) != 0;
+			int style = packed & ~EXPANDED;
+			if (style != 0) {
+				if (style >= file.styleCount)
+					throw corrupt();
+				this.iconResId = file.buffer.getInt(file.stylesOffset + style * STYLE_SIZE);
+				this.barColor = file.buffer.getInt(file.stylesOffset + style * STYLE_SIZE + 4);
+			}
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final int nodeCount;
+	private final int rootCount;
+	private final int stylesOffset;
+	private final int styleCount;
+	private final int stringCount;
+	private final int offsetsOffset;
+	private final int bytesOffset;
+	private final int bytesLength;
+	// Decoded strings, shared by nodes with the same data
+	private final String[] strings;
+
+	/** Reads a snapshot from the buffer's position; throws IllegalArgumentException if it is not one */
+	public TreeSnapshotFile(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+		if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException("Not a tree snapshot");
+		if (this.buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Unsupported snapshot version " + this.buffer.getInt(4));
+		nodeCount = this.buffer.getInt(8);
+		rootCount = this.buffer.getInt(12);
+		styleCount = this.buffer.getInt(16);
+		stringCount = this.buffer.getInt(20);
+		if (nodeCount < 0 || rootCount < 0 || rootCount > nodeCount || styleCount < 0 || stringCount < 0)
+			throw corrupt();
+		// In longs, so huge counts in a corrupt header cannot wrap around
+		int limit = this.buffer.limit();
+		if (HEADER_SIZE + (long) nodeCount * NODE_SIZE + (long) styleCount * STYLE_SIZE + ((long) stringCount + 1) * 4 > limit)
+			throw new IllegalArgumentException("Truncated tree snapshot");
+		stylesOffset = HEADER_SIZE + nodeCount * NODE_SIZE;
+		offsetsOffset = stylesOffset + styleCount * STYLE_SIZE;
+		bytesOffset = offsetsOffset + (stringCount + 1) * 4;
+		bytesLength = this.buffer.getInt(bytesOffset - 4);
+		if (bytesLength < 0 || bytesOffset + (long) bytesLength > limit)
+			throw new IllegalArgumentException("Truncated tree snapshot");
+		strings = new String[stringCount];
+	}
+
+	/** Maps the file read-only; the mapping outlives the closed file */
+	public static TreeSnapshotFile open(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			return new TreeSnapshotFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	// === Writing ===
+
+	public static <T> void write(TreeRoot<T> roots, File file) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			write(roots, out);
+		}
+	}
+
+	/** Writes every loaded node of the tree; the stream is flushed, not closed */
+	public static <T> void write(TreeRoot<T> roots, OutputStream stream) throws IOException {
+		ArrayList<TreeNode<T>> order = new ArrayList<>(roots);
+		for (int i = 0; i < order.size(); i++) {
+			order.addAll(order.get(i).getChildren());
+		}
+
+		HashMap<String, Integer> stringIds = new HashMap<>();
+		ArrayList<byte[]> stringBytes = new ArrayList<>();
+		HashMap<Long, Integer> styleIds = new HashMap<>();
+		ArrayList<Long> styles = new ArrayList<>();
+		styles.add(style(-1, -1));
+		styleIds.put(styles.get(0), 0);
+		int[] stringOf = new int[order.size()];
+		int[] styleOf = new int[order.size()];
+		for (int i = 0; i < order.size(); i++) {
+			TreeNode<T> node = order.get(i);
+			if (node.data == null) {
+				stringOf[i] = -1;
+			} else {
+				String text = String.valueOf(node.data);
+				Integer id = stringIds.get(text);
+				if (id == null) {
+					id = stringBytes.size();
+					stringIds.put(text, id);
+					stringBytes.add(text.getBytes(StandardCharsets.UTF_8));
+				}
+				stringOf[i] = id;
+			}
+			Long style = style(node.iconResId, node.barColor);
+			Integer id = styleIds.get(style);
+			if (id == null) {
+				id = styles.size();
+				styleIds.put(style, id);
+				styles.add(style);
+			}
+			styleOf[i] = id;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(order.size());
+		out.writeInt(roots.size());
+		out.writeInt(styles.size());
+		out.writeInt(stringBytes.size());
+		int nextChild = roots.size();
+		for (int i = 0; i < order.size(); i++) {
+			TreeNode<T> node = order.get(i);
+			int childCount = node.getChildCount();
+			out.writeInt(stringOf[i]);
+			out.writeInt(childCount > 0 ? nextChild : -1);
+			out.writeInt(childCount);
+			out.writeInt(styleOf[i] | (node.expanded ? EXPANDED : 0));
+			nextChild += childCount;
+		}
+		for (long style : styles) {
+			out.writeLong(style);
+		}
+		int offset = 0;
+		out.writeInt(0);
+		for (byte[] bytes : stringBytes) {
+			offset += bytes.length;
+			out.writeInt(offset);
+		}
+		for (byte[] bytes : stringBytes) {
+			out.write(bytes);
+		}
+		out.flush();
+	}
+
+	private static Long style(int iconResId, int barColor) {
+		return ((long) iconResId << 32) | (barColor & 0xFFFFFFFFL);
+	}
+
+	// === Reading ===
+
+	/**
+	 * Top-level nodes for an adapter. Expanded nodes come with their children
+	 * loaded; collapsed nodes with children are lazy, to be filled by
+	 * {@link #childLoader}.
+	 */
+	public TreeRoot<String> createRoots() {
+		TreeRoot<String> roots = new TreeRoot<>();
+		for (int record = 0; record < rootCount; record++) {
+			roots.add(build(record, true));
+		}
+		return roots;
+	}
+
+	/** Loads pages of children for lazy nodes created by this snapshot */
+	public ChildLoader<String> childLoader() {
+		return (parent, offset, limit) -> {
+			ArrayList<TreeNode<String>> page = new ArrayList<>();
+			if (!(parent instanceof NodeView) || ((NodeView) parent).file != this)
+				return page;
+			int record = ((NodeView) parent).record;
+			int count = childCount(record);
+			int first = firstChild(record, count);
+			for (int i = offset; i < count && page.size() < limit; i++) {
+				page.add(build(first + i, true));
+			}
+			return page;
+		};
+	}
+
+	/** Decodes the whole tree at once */
+	public TreeRoot<String> toTreeRoot() {
+		TreeRoot<String> roots = new TreeRoot<>();
+		for (int record = 0; record < rootCount; record++) {
+			roots.add(build(record, false));
+		}
+		return roots;
+	}
+
+	private int nodeOffset(int record) {
+		if (record < 0 || record >= nodeCount)
+			throw corrupt();
+		return HEADER_SIZE + record * NODE_SIZE;
+	}
+
+	private int childCount(int record) {
+		int count = buffer.getInt(nodeOffset(record) + 8);
+		if (count < 0)
+			throw corrupt();
+		return count;
+	}
+
+	/**
+	 * First child record, which breadth-first order puts after the parent's
+	 * record; checking that rules out cycles in a corrupt file.
+	 */
+	private int firstChild(int record, int count) {
+		int first = buffer.getInt(nodeOffset(record) + 4);
+		if (count > 0 && (first <= record || (long) first + count > nodeCount))
+			throw corrupt();
+		return first;
+	}
+
+	private static IllegalArgumentException corrupt() {
+		return new IllegalArgumentException("Corrupt tree snapshot");
+	}
+
+	private String data(int record) {
+		int id = buffer.getInt(nodeOffset(record));
+		if (id < 0)
+			return null;
+		if (id >= stringCount)
+			throw corrupt();
+		String text = strings[id];
+		if (text == null) {
+			int start = buffer.getInt(offsetsOffset + id * 4);
+			int end = buffer.getInt(offsetsOffset + id * 4 + 4);
+			if (start < 0 || start > end || end > bytesLength)
+				throw corrupt();
+			byte[] bytes = new byte[end - start];
+			ByteBuffer view = buffer.duplicate();
+			view.position(bytesOffset + start);
+			view.get(bytes);
+			text = new String(bytes, StandardCharsets.UTF_8);
+			strings[id] = text;
+		}
+		return text;
+	}
+
+	/**
+	 * Builds the subtree of a record; with {@code lazy}, collapsed nodes stop
+	 * the walk and are left for the loader. Counts are set bottom-up and
+	 * depths relative to the top node, which TreeRoot shifts when attaching.
+	 */
+	private NodeView build(int record, boolean lazy) {
+		NodeView top = new NodeView(this, record);
+		ArrayList<TreeNode<String>> order = new ArrayList<>();
+		ArrayList<NodeView> stack = new ArrayList<>();
+		stack.add(top);
+		while (!stack.isEmpty()) {
+			NodeView view = stack.remove(stack.size() - 1);
+			order.add(view);
+			int count = childCount(view.record);
+			if (count == 0)
+				continue;
+			if (lazy && !view.expanded) {
+				view.setLazy(true);
+				continue;
+			}
+			int first = firstChild(view.record, count);
+			TreeRoot<String> children = view.getChildren();
+			for (int i = 0; i < count; i++) {
+				NodeView child = new NodeView(this, first + i);
+				child.depth = view.depth + 1;
+				children.appendDetached(child);
+			}
+			for (int i = count - 1; i >= 0; i--) {
+				stack.add((NodeView) children.get(i));
+			}
+		}
+		TreeBulk.computeCounts(order);
+		return top;
+	}
+}
@@ -0,0 +1,291 @@
+package com.hichem.soft.tree.view;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compact binary expanded-state, small enough for {@code Bundle.putByteArray}
+ * in {@code onSaveInstanceState}. Only expanded nodes are recorded, either by
+ * their path of sibling positions or by a stable key, so duplicate labels do
+ * not collide. Restoring expands the recorded nodes and touches nothing
+ * else; by path or on an indexed tree it costs O(expanded nodes).
+ */
+public class TreeStateCodec {
+
+	private static final int MAGIC = 0x54;
+	private static final int VERSION = 1;
+	private static final int MODE_PATH = 0;
+	private static final int MODE_KEY = 1;
+
+	private static final int TAG_NULL = 0;
+	private static final int TAG_INT = 1;
+	private static final int TAG_LONG = 2;
+	private static final int TAG_STRING = 3;
+
+	private TreeStateCodec() {
+	}
+
+	// === Save ===
+
+	/**
+	 * Records expanded nodes by their path of sibling positions. Paths are
+	 * stored in pre-order as the length shared with the previous path plus the
+	 * remaining positions, so siblings and cousins cost a few bytes each.
+	 * Only valid for a tree with the same shape.
+	 */
+	public static <T> byte[] saveByPath(TreeRoot<T> roots) {
+		ByteWriter out = new ByteWriter();
+		out.write(MAGIC);
+		out.write(VERSION);
+		out.write(MODE_PATH);
+
+		int[] previous = new int[16];
+		int previousLength = 0;
+		int[] path = new int[16];
+		int count = 0;
+		ByteWriter entries = new ByteWriter();
+		for (TreeNode<T> node : TreeTraversal.iterate(roots, TreeTraversal.Order.PRE_ORDER)) {
+			if (!node.expanded)
+				continue;
+			int length = node.getLevel() + 1;
+			if (length > path.length)
+				path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+			int i = length;
+			for (TreeNode<T> n = node; n != null; n = n.parent) {
+				path[--i] = n.getIndexInParent();
+			}
+			int shared = 0;
+			while (shared < length && shared < previousLength && path[shared] == previous[shared])
+				shared++;
+			entries.writeVarInt(shared);
+			entries.writeVarInt(length - shared);
+			for (i = shared; i < length; i++) {
+				entries.writeVarInt(path[i]);
+			}
+			if (previous.length < length)
+				previous = new int[path.length];
+			System.arraycopy(path, 0, previous, 0, length);
+			previousLength = length;
+			count++;
+		}
+		out.writeVarInt(count);
+		out.write(entries);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Records expanded nodes by key. Keys must be Integer, Long or String (or
+	 * null) so they can be read back; anything else is rejected.
+	 */
+	public static <T> byte[] saveByKey(TreeRoot<T> roots, KeyExtractor<T> keys) {
+		ByteWriter entries = new ByteWriter();
+		int count = 0;
+		for (TreeNode<T> node : TreeTraversal.iterate(roots, TreeTraversal.Order.PRE_ORDER)) {
+			if (!node.expanded)
+				continue;
+			writeKey(entries, keys.keyOf(node.data));
+			count++;
+		}
+		ByteWriter out = new ByteWriter();
+		out.write(MAGIC);
+		out.write(VERSION);
+		out.write(MODE_KEY);
+		out.writeVarInt(count);
+		out.write(entries);
+		return out.toByteArray();
+	}
+
+	private static void writeKey(ByteWriter out, Object key) {
+		if (key == null) {
+			out.write(TAG_NULL);
+		} else if (key instanceof Integer) {
+			out.write(TAG_INT);
+			int v = (Integer) key;
+			out.writeVarInt((v << 1) ^ (v >> 31));
+		} else if (key instanceof Long) {
+			out.write(TAG_LONG);
+			long v = (Long) key;
+			out.writeVarLong((v << 1) ^ (v >> 63));
+		} else if (key instanceof String) {
+			out.write(TAG_STRING);
+			byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+			out.writeVarInt(bytes.length);
+			out.write(bytes, bytes.length);
+		} else {
+			throw new IllegalArgumentException("Unsupported key type " + key.getClass().getName());
+		}
+	}
+
+	// === Restore ===
+
+	/**
+	 * Expands the nodes recorded by {@link #saveByPath}. Paths that no longer
+	 * exist are skipped. Returns the number of nodes expanded.
+	 */
+	public static <T> int restoreByPath(TreeRoot<T> roots, byte[] state) {
+		ByteReader in = open(state, MODE_PATH);
+		int count = in.readVarInt();
+		// Node at each level of the previous path, null where it was missing
+		ArrayList<TreeNode<T>> current = new ArrayList<>();
+		int restored = 0;
+		for (int e = 0; e < count; e++) {
+			int shared = in.readVarInt();
+			int rest = in.readVarInt();
+			while (current.size() > shared)
+				current.remove(current.size() - 1);
+			for (int i = 0; i < rest; i++) {
+				int position = in.readVarInt();
+				TreeNode<T> parent = current.isEmpty() ? null : current.get(current.size() - 1);
+				List<TreeNode<T>> siblings = current.isEmpty() ? roots
+						: parent != null ? parent.getChildren() : null;
+				current.add(siblings != null && position < siblings.size() ? siblings.get(position) : null);
+			}
+			TreeNode<T> node = current.isEmpty() ? null : current.get(current.size() - 1);
+			if (node != null && !node.expanded) {
+				node.setExpanded(true);
+				restored++;
+			}
+		}
+		return restored;
+	}
+
+	/**
+	 * Expands the nodes recorded by {@link #saveByKey}. On a tree indexed
+	 * with {@link TreeRoot#setKeyExtractor} each key is an O(1) lookup;
+	 * otherwise the tree is walked once to build a key map. Returns the
+	 * number of nodes expanded.
+	 */
+	public static <T> int restoreByKey(TreeRoot<T> roots, byte[] state, KeyExtractor<T> keys) {
+		ByteReader in = open(state, MODE_KEY);
+		int count = in.readVarInt();
+		HashMap<Object, TreeNode<T>> map = null;
+		if (!roots.isIndexed()) {
+			map = new HashMap<>();
+			for (TreeNode<T> node : TreeTraversal.iterate(roots, TreeTraversal.Order.PRE_ORDER)) {
+				map.put(keys.keyOf(node.data), node);
+			}
+		}
+		int restored = 0;
+		for (int e = 0; e < count; e++) {
+			Object key = readKey(in);
+			TreeNode<T> node = map != null ? map.get(key) : roots.findNodeByKey(key);
+			if (node != null && !node.expanded) {
+				node.setExpanded(true);
+				restored++;
+			}
+		}
+		return restored;
+	}
+
+	private static ByteReader open(byte[] state, int mode) {
+		ByteReader in = new ByteReader(state);
+		if (in.read() != MAGIC || in.read() != VERSION)
+			throw new IllegalArgumentException("Not a tree state");
+		if (in.read() != mode)
+			throw new IllegalArgumentException(mode == MODE_PATH ? "State was saved by key" : "State was saved by path");
+		return in;
+	}
+
+	private static Object readKey(ByteReader in) {
+		int tag = in.read();
+		switch (tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_INT: {
+				int v = in.readVarInt();
+				return (v >>> 1) ^ -(v & 1);
+			}
+			case TAG_LONG: {
+				long v = in.readVarLong();
+				return (v >>> 1) ^ -(v & 1);
+			}
+			case TAG_STRING: {
+				int length = in.readVarInt();
+				return in.readString(length);
+			}
+			default:
+				throw new IllegalArgumentException("Corrupt tree state");
+		}
+	}
+
+	// === Buffers ===
+
+	private static class ByteWriter {
+		byte[] buf = new byte[64];
+		int size;
+
+		void write(int b) {
+			if (size == buf.length)
+				buf = Arrays.copyOf(buf, size * 2);
+			buf[size++] = (byte) b;
+		}
+
+		void write(byte[] bytes, int length) {
+			if (size + length > buf.length)
+				buf = Arrays.copyOf(buf, Math.max(size + length, buf.length * 2));
+			System.arraycopy(bytes, 0, buf, size, length);
+			size += length;
+		}
+
+		void write(ByteWriter other) {
+			write(other.buf, other.size);
+		}
+
+		void writeVarInt(int v) {
+			writeVarLong(v & 0xFFFFFFFFL);
+		}
+
+		void writeVarLong(long v) {
+			while ((v & ~0x7FL) != 0) {
+				write((int) ((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			write((int) v);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, size);
+		}
+	}
+
+	private static class ByteReader {
+		final byte[] buf;
+		int pos;
+
+		ByteReader(byte[] buf) {
+			this.buf = buf;
+		}
+
+		int read() {
+			if (pos >= buf.length)
+				throw new IllegalArgumentException("Truncated tree state");
+			return buf[pos++] & 0xFF;
+		}
+
+		int readVarInt() {
+			return (int) readVarLong();
+		}
+
+		long readVarLong() {
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = read();
+				v |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return v;
+			}
+			throw new IllegalArgumentException("Corrupt tree state");
+		}
+
+		String readString(int length) {
+			if (length < 0 || pos + length > buf.length)
+				throw new IllegalArgumentException("Truncated tree state");
+			String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return s;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.hichem.soft.tree.view;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.text.TextPaint;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * Colors, paints, drawables and dimensions shared by every row of an adapter.
+ * Everything is computed once per style instead of once per row; paints are
+ * only touched on the UI thread, so rows may set a color just before drawing.
+ */
+public class TreeStyle {
+
+	public static final int LINE_COLOR = 0xFFBBBBBB;
+	public static final int PILL_COLOR = 0xFFF5F5F5;
+	public static final int PILL_STROKE_COLOR = 0xFFDDDDDD;
+	public static final int SHADOW_COLOR = Color.argb(80, 0, 0, 0);
+	public static final int HIGHLIGHT_COLOR = 0xFFFFE082;
+
+	public static final int BASE_PADDING = 24;
+	public static final int LEVEL_SPACING = 20;
+	public static final int VERTICAL_PADDING = 16;
+	public static final int BAR_WIDTH = 8;
+	public static final int ICON_SIZE = 48;
+	public static final int GAP = 8;
+	public static final float CORNER_RADIUS = 16f;
+	public static final float ELEVATION = 6f;
+
+	private final Context context;
+	private final float density;
+
+	public final Paint shadowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	public final Paint cardPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	public final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	public final Paint barPaint = new Paint();
+	public final Paint pillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	public final Paint pillStrokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	public final Paint highlightPaint = new Paint();
+	public final TextPaint labelPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+	public final TextPaint indicatorPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+	public final Typeface labelTypeface = Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+	public final float labelTextSize;
+	public final int pillPaddingH;
+	public final int pillPaddingV;
+	public final float pillRadius;
+	/** Label height including the pill padding */
+	public final float labelHeight;
+
+	private final Drawable.ConstantState pillBackground;
+	private final SparseArray<Drawable.ConstantState> icons = new SparseArray<>();
+	private long fadeDuration = 150;
+
+	public TreeStyle(Context context) {
+		this.context = context;
+		this.density = context.getResources().getDisplayMetrics().density;
+		pillPaddingH = dp(6);
+		pillPaddingV = dp(3);
+		pillRadius = dp(12);
+		labelTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 16f,
+				context.getResources().getDisplayMetrics());
+
+		shadowPaint.setColor(SHADOW_COLOR);
+		cardPaint.setColor(Color.WHITE);
+		linePaint.setColor(LINE_COLOR);
+		linePaint.setStrokeWidth(4f);
+		pillPaint.setColor(PILL_COLOR);
+		pillStrokePaint.setStyle(Paint.Style.STROKE);
+		pillStrokePaint.setStrokeWidth(dp(1));
+		pillStrokePaint.setColor(PILL_STROKE_COLOR);
+		highlightPaint.setColor(HIGHLIGHT_COLOR);
+		labelPaint.setTextSize(labelTextSize);
+		labelPaint.setColor(Color.BLACK);
+		labelPaint.setTypeface(labelTypeface);
+		indicatorPaint.setTextSize(labelTextSize);
+		indicatorPaint.setTypeface(Typeface.DEFAULT_BOLD);
+		labelHeight = labelPaint.descent() - labelPaint.ascent() + 2 * pillPaddingV;
+
+		GradientDrawable bg = new GradientDrawable();
+		bg.setColor(PILL_COLOR);
+		bg.setCornerRadius(pillRadius);
+		bg.setStroke(dp(1), PILL_STROKE_COLOR);
+		pillBackground = bg.getConstantState();
+	}
+
+	public int dp(int px) {
+		return Math.round(px * density);
+	}
+
+	/** Background for a PrettyTextView; instances share one drawable state */
+	public Drawable newPillBackground() {
+		return pillBackground.newDrawable();
+	}
+
+	/**
+	 * Returns a drawable for the resource id, sharing the decoded bitmap and
+	 * state with every other row showing the same icon. Null for -1.
+	 */
+	public Drawable icon(int resId) {
+		if (resId == -1)
+			return null;
+		Drawable.ConstantState state = icons.get(resId);
+		if (state == null) {
+			Drawable drawable = context.getDrawable(resId);
+			if (drawable == null)
+				return null;
+			state = drawable.getConstantState();
+			if (state == null)
+				return drawable; // not shareable, use it as is
+			icons.put(resId, state);
+			return drawable;
+		}
+		return state.newDrawable();
+	}
+
+	/** Duration of the fade-in run when a row is bound, 0 disables it */
+	public void setFadeDuration(long millis) {
+		this.fadeDuration = millis;
+	}
+
+	public void fadeIn(View view) {
+		if (fadeDuration <= 0)
+			return;
+		view.setAlpha(0f);
+		view.animate().alpha(1f).setDuration(fadeDuration);
+	}
+}
@@ -0,0 +1,279 @@
+package com.hichem.soft.tree.view;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Batch of edits to a tree, applied together by {@link #commit}. Edits are
+ * only recorded until then; if one of them fails, the ones already applied
+ * are undone and the tree is left as it was. Committing returns a
+ * {@link ChangeSet} naming the rows to update, and a transaction from
+ * {@link TreeViewAdapter#beginTransaction} hands it to the adapter, which
+ * applies all change sets committed during a frame in one pass.
+ *
+ * <p>Like every edit of the adapter's tree, commit on the main thread.
+ */
+public class TreeTransaction<T> {
+
+	private static final int ADD = 0;
+	private static final int REMOVE = 1;
+	private static final int MOVE = 2;
+	private static final int DATA = 3;
+	private static final int EXPANDED = 4;
+	private static final int ICON = 5;
+	private static final int BAR_COLOR = 6;
+
+	/**
+	 * What a commit changed: nodes whose rows must be rebound, and whether
+	 * rows may have been added or removed. Change sets merge, so several
+	 * commits can be applied at once.
+	 */
+	public static class ChangeSet<T> {
+		final Set<TreeNode<T>> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+		// Nodes moved to another level; their visible subtrees are rebound
+		final Set<TreeNode<T>> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+		boolean structural;
+
+		public boolean isEmpty() {
+			return changed.isEmpty() && moved.isEmpty() && !structural;
+		}
+
+		/** True if rows may have been inserted or removed */
+		public boolean isStructural() {
+			return structural;
+		}
+
+		public Set<TreeNode<T>> getChangedNodes() {
+			return Collections.unmodifiableSet(changed);
+		}
+
+		void merge(ChangeSet<T> other) {
+			changed.addAll(other.changed);
+			moved.addAll(other.moved);
+			structural |= other.structural;
+		}
+	}
+
+	private static class Op<T> {
+		final int type;
+		final TreeNode<T> node;
+		final TreeNode<T> parent;
+		final int position;
+		final Object value;
+		// Undo information, filled in when applied
+		TreeNode<T> oldParent;
+		int oldPosition;
+		Object oldValue;
+
+		Op(int type, TreeNode<T> node, TreeNode<T> parent, int position, Object value) {
+			this.type = type;
+			this.node = node;
+			this.parent = parent;
+			this.position = position;
+			this.value = value;
+		}
+	}
+
+	private final TreeRoot<T> roots;
+	private final TreeViewAdapter<T> adapter;
+	private final ArrayList<Op<T>> ops = new ArrayList<>();
+
+	public TreeTransaction(TreeRoot<T> roots) {
+		this(roots, null);
+	}
+
+	TreeTransaction(TreeRoot<T> roots, TreeViewAdapter<T> adapter) {
+		this.roots = roots;
+		this.adapter = adapter;
+	}
+
+	// === Recording ===
+
+	/** Appends the node under the parent, or to the roots if parent is null */
+	public TreeTransaction<T> add(TreeNode<T> parent, TreeNode<T> node) {
+		return insert(parent, -1, node);
+	}
+
+	/** Inserts the node at the position, or at the end if position is -1 */
+	public TreeTransaction<T> insert(TreeNode<T> parent, int position, TreeNode<T> node) {
+		ops.add(new Op<>(ADD, node, parent, position, null));
+		return this;
+	}
+
+	/** Removes the node and its subtree */
+	public TreeTransaction<T> remove(TreeNode<T> node) {
+		ops.add(new Op<>(REMOVE, node, null, 0, null));
+		return this;
+	}
+
+	/** Moves the node as {@link TreeRoot#moveNode} does */
+	public TreeTransaction<T> move(TreeNode<T> node, TreeNode<T> newParent, int position) {
+		ops.add(new Op<>(MOVE, node, newParent, position, null));
+		return this;
+	}
+
+	public TreeTransaction<T> setData(TreeNode<T> node, T data) {
+		ops.add(new Op<>(DATA, node, null, 0, data));
+		return this;
+	}
+
+	public TreeTransaction<T> setExpanded(TreeNode<T> node, boolean expanded) {
+		ops.add(new Op<>(EXPANDED, node, null, 0, expanded));
+		return this;
+	}
+
+	public TreeTransaction<T> setIconResId(TreeNode<T> node, int resId) {
+		ops.add(new Op<>(ICON, node, null, 0, resId));
+		return this;
+	}
+
+	public TreeTransaction<T> setBarColor(TreeNode<T> node, int color) {
+		ops.add(new Op<>(BAR_COLOR, node, null, 0, color));
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return ops.isEmpty();
+	}
+
+	// === Commit ===
+
+	/**
+	 * Applies the recorded edits in order and clears them. If an edit throws,
+	 * the earlier ones are undone before the exception propagates.
+	 */
+	public ChangeSet<T> commit() {
+		ChangeSet<T> changes = new ChangeSet<>();
+		int applied = 0;
+		try {
+			for (; applied < ops.size(); applied++) {
+				apply(ops.get(applied), changes);
+			}
+		} catch (RuntimeException e) {
+			for (int i = applied - 1; i >= 0; i--) {
+				undo(ops.get(i));
+			}
+			ops.clear();
+			throw e;
+		}
+		ops.clear();
+		if (adapter != null)
+			adapter.applyChanges(changes);
+		return changes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void apply(Op<T> op, ChangeSet<T> changes) {
+		TreeNode<T> node = op.node;
+		switch (op.type) {
+			case ADD: {
+				TreeRoot<T> list = listOf(op.parent);
+				if (op.position < -1 || op.position > list.size())
+					throw new IndexOutOfBoundsException("position " + op.position + ", size " + list.size());
+				childrenChanging(list, changes);
+				list.add(op.position == -1 ? list.size() : op.position, node);
+				childrenChanged(op.parent, list, changes);
+				break;
+			}
+			case REMOVE: {
+				op.oldParent = node.parent;
+				TreeRoot<T> list = listOf(node.parent);
+				op.oldPosition = list.positionOf(node);
+				if (op.oldPosition < 0)
+					throw new IllegalArgumentException("Node is not in this tree");
+				childrenChanging(list, changes);
+				list.remove(op.oldPosition);
+				childrenChanged(op.oldParent, list, changes);
+				break;
+			}
+			case MOVE: {
+				op.oldParent = node.parent;
+				TreeRoot<T> from = listOf(node.parent);
+				TreeRoot<T> to = listOf(op.parent);
+				op.oldPosition = from.positionOf(node);
+				childrenChanging(from, changes);
+				childrenChanging(to, changes);
+				roots.moveNode(node, op.parent, op.position);
+				childrenChanged(op.oldParent, from, changes);
+				childrenChanged(op.parent, to, changes);
+				changes.moved.add(node);
+				break;
+			}
+			case DATA:
+				op.oldValue = node.data;
+				node.setData((T) op.value);
+				changes.changed.add(node);
+				break;
+			case EXPANDED:
+				op.oldValue = node.expanded;
+				node.setExpanded((Boolean) op.value);
+				changes.changed.add(node);
+				changes.structural = true;
+				break;
+			case ICON:
+				op.oldValue = node.iconResId;
+				node.iconResId = (Integer) op.value;
+				changes.changed.add(node);
+				break;
+			case BAR_COLOR:
+				op.oldValue = node.barColor;
+				node.barColor = (Integer) op.value;
+				changes.changed.add(node);
+				break;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void undo(Op<T> op) {
+		TreeNode<T> node = op.node;
+		switch (op.type) {
+			case ADD:
+				roots.removeNode(node);
+				break;
+			case REMOVE:
+				listOf(op.oldParent).add(op.oldPosition, node);
+				break;
+			case MOVE: {
+				// moveNode counts the position before the node leaves its list
+				int position = op.oldPosition;
+				if (node.parent == op.oldParent && listOf(op.oldParent).positionOf(node) < position)
+					position++;
+				roots.moveNode(node, op.oldParent, position);
+				break;
+			}
+			case DATA:
+				node.setData((T) op.oldValue);
+				break;
+			case EXPANDED:
+				node.setExpanded((Boolean) op.oldValue);
+				break;
+			case ICON:
+				node.iconResId = (Integer) op.oldValue;
+				break;
+			case BAR_COLOR:
+				node.barColor = (Integer) op.oldValue;
+				break;
+		}
+	}
+
+	private TreeRoot<T> listOf(TreeNode<T> parent) {
+		return parent != null ? parent.getChildren() : roots;
+	}
+
+	// The parent's expand indicator and its last child's guide lines may change
+	private void childrenChanging(List<TreeNode<T>> list, ChangeSet<T> changes) {
+		changes.structural = true;
+		if (!list.isEmpty())
+			changes.changed.add(list.get(list.size() - 1));
+	}
+
+	private void childrenChanged(TreeNode<T> parent, List<TreeNode<T>> list, ChangeSet<T> changes) {
+		if (parent != null)
+			changes.changed.add(parent);
+		if (!list.isEmpty())
+			changes.changed.add(list.get(list.size() - 1));
+	}
+}
@@ -0,0 +1,243 @@
+package com.hichem.soft.tree.view;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy, non-recursive tree walks. Iterators keep an explicit stack of
+ * (child list, position) pairs instead of copying lists, so arbitrarily deep
+ * trees can be traversed and a walk can stop or prune at any node.
+ */
+public class TreeTraversal {
+
+	public enum Order {
+		/** Parent before its children */
+		PRE_ORDER,
+		/** Children before their parent */
+		POST_ORDER,
+		/** Breadth first, level by level */
+		LEVEL_ORDER,
+		/** Pre-order through expanded nodes only, i.e. the rows on screen */
+		VISIBLE
+	}
+
+	public enum Action {
+		CONTINUE,
+		/** Do not visit this node's children (ignored in post-order) */
+		SKIP_CHILDREN,
+		STOP
+	}
+
+	public interface Visitor<T> {
+		Action visit(TreeNode<T> node);
+	}
+
+	/** Iterator that can prune the subtree of the node last returned */
+	public static abstract class TreeIterator<T> implements Iterator<TreeNode<T>>, Iterable<TreeNode<T>> {
+		/** Skips the children of the node last returned by next() */
+		public abstract void skipChildren();
+
+		@Override
+		public Iterator<TreeNode<T>> iterator() {
+			return this;
+		}
+	}
+
+	private TreeTraversal() {
+	}
+
+	public static <T> TreeIterator<T> iterate(List<TreeNode<T>> roots, Order order) {
+		switch (order) {
+			case POST_ORDER:
+				return new PostOrder<>(roots);
+			case LEVEL_ORDER:
+				return new LevelOrder<>(roots);
+			case VISIBLE:
+				return new PreOrder<>(roots, true);
+			default:
+				return new PreOrder<>(roots, false);
+		}
+	}
+
+	/** Iterates the subtree rooted at the node, the node included */
+	public static <T> TreeIterator<T> iterate(TreeNode<T> node, Order order) {
+		return iterate(Collections.singletonList(node), order);
+	}
+
+	/** Visits nodes in the given order; returns false if the visitor stopped the walk */
+	public static <T> boolean walk(List<TreeNode<T>> roots, Order order, Visitor<T> visitor) {
+		TreeIterator<T> it = iterate(roots, order);
+		while (it.hasNext()) {
+			Action action = visitor.visit(it.next());
+			if (action == Action.STOP)
+				return false;
+			if (action == Action.SKIP_CHILDREN)
+				it.skipChildren();
+		}
+		return true;
+	}
+
+	// === Implementations ===
+
+	/** Stack of (list, position) pairs without per-level allocation */
+	private static class ListStack<T> {
+		final ArrayList<List<TreeNode<T>>> lists = new ArrayList<>();
+		int[] positions = new int[16];
+
+		void push(List<TreeNode<T>> list) {
+			int depth = lists.size();
+			if (depth == positions.length)
+				positions = Arrays.copyOf(positions, depth * 2);
+			positions[depth] = 0;
+			lists.add(list);
+		}
+
+		void pop() {
+			lists.remove(lists.size() - 1);
+		}
+
+		boolean isEmpty() {
+			return lists.isEmpty();
+		}
+
+		List<TreeNode<T>> topList() {
+			return lists.get(lists.size() - 1);
+		}
+
+		int topPosition() {
+			return positions[lists.size() - 1];
+		}
+
+		void advance() {
+			positions[lists.size() - 1]++;
+		}
+	}
+
+	private static class PreOrder<T> extends TreeIterator<T> {
+		private final ListStack<T> stack = new ListStack<>();
+		private final boolean visibleOnly;
+		private TreeNode<T> last;
+
+		PreOrder(List<TreeNode<T>> roots, boolean visibleOnly) {
+			this.visibleOnly = visibleOnly;
+			stack.push(roots);
+		}
+
+		@Override
+		public void skipChildren() {
+			last = null;
+		}
+
+		private void descend() {
+			if (last != null) {
+				if (!last.isEmpty() && (!visibleOnly || last.expanded))
+					stack.push(last.getChildren());
+				last = null;
+			}
+			while (!stack.isEmpty() && stack.topPosition() >= stack.topList().size())
+				stack.pop();
+		}
+
+		@Override
+		public boolean hasNext() {
+			descend();
+			return !stack.isEmpty();
+		}
+
+		@Override
+		public TreeNode<T> next() {
+			descend();
+			if (stack.isEmpty())
+				throw new NoSuchElementException();
+			TreeNode<T> node = stack.topList().get(stack.topPosition());
+			stack.advance();
+			last = node;
+			return node;
+		}
+	}
+
+	private static class PostOrder<T> extends TreeIterator<T> {
+		private final ListStack<T> stack = new ListStack<>();
+
+		PostOrder(List<TreeNode<T>> roots) {
+			stack.push(roots);
+		}
+
+		@Override
+		public void skipChildren() {
+			// Children have already been visited in post-order
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !stack.isEmpty() && (stack.lists.size() > 1 || stack.topPosition() < stack.topList().size());
+		}
+
+		@Override
+		public TreeNode<T> next() {
+			while (!stack.isEmpty()) {
+				List<TreeNode<T>> list = stack.topList();
+				int position = stack.topPosition();
+				if (position < list.size()) {
+					TreeNode<T> node = list.get(position);
+					if (node.isEmpty()) {
+						stack.advance();
+						return node;
+					}
+					// Visit the children first, the node is emitted on the way back
+					stack.push(node.getChildren());
+				} else {
+					stack.pop();
+					if (stack.isEmpty())
+						break;
+					TreeNode<T> parent = stack.topList().get(stack.topPosition());
+					stack.advance();
+					return parent;
+				}
+			}
+			throw new NoSuchElementException();
+		}
+	}
+
+	private static class LevelOrder<T> extends TreeIterator<T> {
+		private final ArrayDeque<TreeNode<T>> queue = new ArrayDeque<>();
+		private TreeNode<T> last;
+
+		LevelOrder(List<TreeNode<T>> roots) {
+			queue.addAll(roots);
+		}
+
+		@Override
+		public void skipChildren() {
+			last = null;
+		}
+
+		private void enqueueLast() {
+			if (last != null) {
+				queue.addAll(last.getChildren());
+				last = null;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			enqueueLast();
+			return !queue.isEmpty();
+		}
+
+		@Override
+		public TreeNode<T> next() {
+			enqueueLast();
+			TreeNode<T> node = queue.poll();
+			if (node == null)
+				throw new NoSuchElementException();
+			last = node;
+			return node;
+		}
+	}
+}
@@ -9,12 +9,15 @@ import java.util.List;
 
 public class TreeUtils {
 
-	/** Get all nodes in the tree (recursive) */
+	/** Get all nodes in the tree, in pre-order */
 	public static <T> List<TreeNode<T>> getAllNodes(TreeRoot<T> root) {
-		List<TreeNode<T>> result = new ArrayList<>();
+		int size = root.size();
 		for (TreeNode<T> node : root) {
+			size += node.getDescendantCount();
+		}
+		List<TreeNode<T>> result = new ArrayList<>(size);
+		for (TreeNode<T> node : TreeTraversal.iterate(root, TreeTraversal.Order.PRE_ORDER)) {
 			result.add(node);
-			result.addAll(getAllNodes(node.getChildren()));
 		}
 		return result;
 	}
@@ -22,49 +25,39 @@ public class TreeUtils {
 	/** Get all leaf nodes (no children) */
 	public static <T> List<TreeNode<T>> getLeafNodes(TreeRoot<T> root) {
 		List<TreeNode<T>> result = new ArrayList<>();
-		for (TreeNode<T> node : root) {
-			if (node.isEmpty()) {
+		for (TreeNode<T> node : TreeTraversal.iterate(root, TreeTraversal.Order.PRE_ORDER)) {
+			if (node.isEmpty())
 				result.add(node);
-			} else {
-				result.addAll(getLeafNodes(node.getChildren()));
-			}
 		}
 		return result;
 	}
 
-	/** Get all expanded (visible) nodes */
+	/** Get all expanded nodes whose ancestors are expanded too */
 	public static <T> List<TreeNode<T>> getExpandedNodes(TreeRoot<T> root) {
 		List<TreeNode<T>> result = new ArrayList<>();
-		for (TreeNode<T> node : root) {
-			if (node.expanded) {
-				result.add(node);
-				result.addAll(getExpandedNodes(node.getChildren()));
-			}
-		}
+		TreeTraversal.walk(root, TreeTraversal.Order.PRE_ORDER, node -> {
+			if (!node.expanded)
+				return TreeTraversal.Action.SKIP_CHILDREN;
+			result.add(node);
+			return TreeTraversal.Action.CONTINUE;
+		});
 		return result;
 	}
 
-	/** Find node by data */
+	/** Find node by data, in O(1) if the tree is indexed */
 	public static <T> TreeNode<T> findNodeByData(TreeRoot<T> root, T data) {
-		for (TreeNode<T> node : root) {
+		if (root.isIndexed())
+			return root.findNodeByData(data);
+		for (TreeNode<T> node : TreeTraversal.iterate(root, TreeTraversal.Order.PRE_ORDER)) {
 			if (node.data.equals(data))
 				return node;
-			TreeNode<T> found = findNodeByData(node.getChildren(), data);
-			if (found != null)
-				return found;
 		}
 		return null;
 	}
 
 	/** Get depth/level of a node (root = 0) */
 	public static <T> int getDepth(TreeNode<T> node) {
-		int depth = 0;
-		TreeNode<T> current = node.parent;
-		while (current != null) {
-			depth++;
-			current = current.parent;
-		}
-		return depth;
+		return node.getLevel();
 	}
 
 	/** Get full path from root to node */
@@ -187,7 +180,8 @@ public class TreeUtils {
 		return node;
 	}
 
-	// Save the expanded/collapsed state of the tree to a JSON string
+	// Save the expanded/collapsed state of the tree to a JSON string, keyed by label.
+	// TreeStateCodec keeps only the expanded nodes, by path or stable key.
 	public static String saveTreeState(TreeRoot<?> root) {
 		try {
 			JSONObject obj = new JSONObject();
@@ -220,7 +214,7 @@ public class TreeUtils {
 	private static void applyNodeStateArray(TreeRoot<?> root, JSONObject obj) throws JSONException {
 		for (TreeNode<?> node : root) {
 			if (obj.has(node.data.toString())) {
-				node.expanded = obj.getBoolean(node.data.toString());
+				node.setExpanded(obj.getBoolean(node.data.toString()));
 			}
 			if (!node.isEmpty()) {
 				applyNodeStateArray(node.getChildren(), obj);
@@ -228,6 +222,13 @@ public class TreeUtils {
 		}
 	}
 
+	/**
+	 * Converts the whole document up front; see {@link LazyJsonTree} for large
+	 * documents. Node data is a {@link JsonEntry}, not a String: use
+	 * {@code String.valueOf(node.data)} for the {@code "key: value"} label, and
+	 * search with {@code findNodeByData(JsonEntry.of(key, value))}.
+	 * Only a document that is not JSON gives a String node.
+	 */
 	public static TreeNode<Object> fromAnyJson(String json) {
 		try {
 			json = json.trim();
@@ -248,7 +249,7 @@ public class TreeUtils {
 	}
 
 	private static TreeNode<Object> fromJsonObject(String name, JSONObject obj) {
-		TreeNode<Object> node = new TreeNode<>(name != null ? name : "root");
+		TreeNode<Object> node = new TreeNode<>(JsonEntry.object(name != null ? name : "root"));
 		JSONArray keys = obj.names();
 		if (keys != null) {
 			for (int i = 0; i < keys.length(); i++) {
@@ -259,7 +260,7 @@ public class TreeUtils {
 				} else if (value instanceof JSONArray) {
 					node.addChild(fromJsonArray(key, (JSONArray) value));
 				} else {
-					node.addChild(new TreeNode<>(key + ": " + String.valueOf(value)));
+					node.addChild(new TreeNode<>(JsonEntry.of(key, value)));
 				}
 			}
 		}
@@ -267,7 +268,7 @@ public class TreeUtils {
 	}
 
 	private static TreeNode<Object> fromJsonArray(String name, JSONArray arr) {
-		TreeNode<Object> node = new TreeNode<>(name != null ? name : "array");
+		TreeNode<Object> node = new TreeNode<>(JsonEntry.array(name != null ? name : "array"));
 		for (int i = 0; i < arr.length(); i++) {
 			Object value = arr.opt(i);
 			if (value instanceof JSONObject) {
@@ -275,7 +276,7 @@ public class TreeUtils {
 			} else if (value instanceof JSONArray) {
 				node.addChild(fromJsonArray("[" + i + "]", (JSONArray) value));
 			} else {
-				node.addChild(new TreeNode<>("[" + i + "]: " + String.valueOf(value)));
+				node.addChild(new TreeNode<>(JsonEntry.of("[" + i + "]", value)));
 			}
 		}
 		return node;
@@ -285,12 +286,11 @@ public class TreeUtils {
 		try {
 			// Wrap the node into a JSON object with its name as key if it has children
 			Object result;
-			if (node.isLeaf()) {
-				result = parseValue(node.data);
+			if (!isContainer(node)) {
+				result = leafValue(node.data);
 			} else {
 				JSONObject obj = new JSONObject();
-				String key = extractKey(node.data);
-				obj.put(key, toJsonValue(node));
+				obj.put(keyOf(node.data), toJsonValue(node));
 				result = obj;
 			}
 
@@ -310,6 +310,9 @@ public class TreeUtils {
 	private static Object toJsonValue(TreeNode<Object> node) {
 		// If node has no children → it's a leaf value
 		try {
+			JsonEntry entry = JsonEntry.from(node.data);
+			if (entry != null)
+				return toTypedValue(node, entry);
 			if (node.isLeaf()) {
 				return parseValue(node.data);
 			}
@@ -332,8 +335,7 @@ public class TreeUtils {
 			} else {
 				JSONObject obj = new JSONObject();
 				for (TreeNode<Object> child : node.getChildren()) {
-					String key = extractKey(child.data);
-					obj.put(key, toJsonValue(child));
+					obj.put(keyOf(child.data), toJsonValue(child));
 				}
 				return obj;
 			}
@@ -342,14 +344,53 @@ public class TreeUtils {
 		}
 	}
 
-	private static boolean isArrayKey(Object data) {
+	// Typed nodes are written from their JsonEntry, no label is parsed
+	private static Object toTypedValue(TreeNode<Object> node, JsonEntry entry) throws JSONException {
+		if (entry.type == JsonEntry.ARRAY) {
+			JSONArray arr = new JSONArray();
+			for (TreeNode<Object> child : node.getChildren()) {
+				arr.put(toJsonValue(child));
+			}
+			return arr;
+		}
+		if (entry.type == JsonEntry.OBJECT) {
+			JSONObject obj = new JSONObject();
+			for (TreeNode<Object> child : node.getChildren()) {
+				obj.put(keyOf(child.data), toJsonValue(child));
+			}
+			return obj;
+		}
+		return entry.value != null ? entry.value : JSONObject.NULL;
+	}
+
+	/** True if the node is written as an object or array; untyped nodes are if they have children */
+	static boolean isContainer(TreeNode<Object> node) {
+		JsonEntry entry = JsonEntry.from(node.data);
+		return entry != null ? entry.isContainer() : !node.isLeaf();
+	}
+
+	/** Member name of node data, typed or a "key: value" label */
+	static String keyOf(Object data) {
+		JsonEntry entry = JsonEntry.from(data);
+		return entry != null ? entry.key : extractKey(data);
+	}
+
+	/** JSON value of a leaf's data, typed or a "key: value" label */
+	static Object leafValue(Object data) {
+		JsonEntry entry = JsonEntry.from(data);
+		if (entry == null)
+			return parseValue(data);
+		return entry.value != null ? entry.value : JSONObject.NULL;
+	}
+
+	static boolean isArrayKey(Object data) {
 		if (!(data instanceof String))
 			return false;
 		String s = (String) data;
 		return s.matches("^\\[\\d+\\]$");
 	}
 
-	private static String extractKey(Object data) {
+	static String extractKey(Object data) {
 		if (!(data instanceof String))
 			return String.valueOf(data);
 		String s = (String) data;
@@ -360,7 +401,7 @@ public class TreeUtils {
 		return s;
 	}
 
-	private static Object parseValue(Object data) {
+	static Object parseValue(Object data) {
 		if (data == null)
 			return JSONObject.NULL;
 		if (!(data instanceof String))
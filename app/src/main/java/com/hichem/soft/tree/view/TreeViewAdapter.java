@@ -1,24 +1,154 @@
 package com.hichem.soft.tree.view;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
 import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.TextView;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public abstract class TreeViewAdapter<T> {
-	
+
 	protected Context context;
 	protected TreeRoot<T> roots;
 	protected LinearLayout container;
+	protected ListView listView;
 	protected TreeViewListener<T> listener;
 
+	protected final VisibleNodeList<T> visibleNodes;
+	private final RowAdapter rowAdapter = new RowAdapter();
+
+	// Rows removed from the LinearLayout, handed back to bindView for reuse
+	private static final int MAX_SCRAP = 256;
+	private final ArrayDeque<View> scrap = new ArrayDeque<>();
+	private final Set<View> placeholderViews = new HashSet<>();
+
+	// Lazy loading
+	private ChildLoader<T> childLoader;
+	private ExecutorService loadExecutor;
+	// Created by setChildLoader(loader), shut down when replaced or released
+	private ExecutorService ownedLoadExecutor;
+	private int pageSize = 100;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+	// Tree replacement
+	private ExecutorService diffExecutor;
+	private volatile int diffGeneration;
+
+	// Transactions committed since the last frame; past this many changed
+	// nodes one identity diff of the rows beats looking each node up
+	private static final int MAX_SINGLE_REBINDS = 32;
+	private TreeTransaction.ChangeSet<T> pendingChanges;
+	private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flushChanges();
+
+	// Opt-in instrumentation, null when off so the hot path pays one null check
+	private TreeMetrics metrics;
+	private TreeMetrics.Listener metricsListener;
+	private final Choreographer.FrameCallback metricsFrameCallback = frameTimeNanos -> endOperation(metrics);
+
 	public void setListener(TreeViewListener<T> listener) {
 		this.listener = listener;
 	}
-	
+
 	public TreeViewAdapter(Context ctx, TreeRoot roots) {
 		this.context = ctx;
 		this.roots = roots;
+		this.visibleNodes = new VisibleNodeList<>(this.roots);
+		this.visibleNodes.setRangeListener(new VisibleNodeList.RangeListener() {
+			@Override
+			public void onRangeInserted(int start, int count) {
+				if (listView != null)
+					rowAdapter.notifyDataSetChanged();
+				if (container != null) {
+					for (int i = start; i < start + count; i++) {
+						container.addView(buildRow(visibleNodes.get(i)), i);
+					}
+				}
+			}
+
+			@Override
+			public void onRangeRemoved(int start, int count) {
+				if (listView != null)
+					rowAdapter.notifyDataSetChanged();
+				if (container != null) {
+					for (int i = start; i < start + count; i++) {
+						recycle(container.getChildAt(i));
+					}
+					container.removeViews(start, count);
+				}
+			}
+
+			@Override
+			public void onRangeChanged(int start, int count) {
+				for (int i = start; i < start + count; i++) {
+					rebindRow(i);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Loads the children of lazy nodes (see {@link TreeNode#setLazy}) on first
+	 * expand, one page at a time, using a single background thread.
+	 */
+	public void setChildLoader(ChildLoader<T> loader) {
+		if (ownedLoadExecutor == null)
+			ownedLoadExecutor = Executors.newSingleThreadExecutor();
+		setChildLoader(loader, ownedLoadExecutor);
+	}
+
+	/** Loads on the given executor, which the adapter never shuts down */
+	public void setChildLoader(ChildLoader<T> loader, ExecutorService executor) {
+		if (ownedLoadExecutor != null && executor != ownedLoadExecutor) {
+			ownedLoadExecutor.shutdown();
+			ownedLoadExecutor = null;
+		}
+		this.childLoader = loader;
+		this.loadExecutor = executor;
+	}
+
+	/**
+	 * Stops the adapter's own background threads: the default loader thread
+	 * and the diff thread. Pending loads, diffs and row updates are dropped.
+	 * Call it when the tree is no longer shown, e.g. in onDestroy.
+	 */
+	public void release() {
+		cancelPendingChanges();
+		diffGeneration++;
+		for (TreeNode<T> node : TreeTraversal.iterate(roots, TreeTraversal.Order.PRE_ORDER)) {
+			if (node.loadTask != null) {
+				node.loadTask.cancel(true);
+				node.loadTask = null;
+			}
+		}
+		if (ownedLoadExecutor != null) {
+			ownedLoadExecutor.shutdownNow();
+			if (loadExecutor == ownedLoadExecutor)
+				childLoader = null;
+			ownedLoadExecutor = null;
+		}
+		if (diffExecutor != null) {
+			diffExecutor.shutdownNow();
+			diffExecutor = null;
+		}
+	}
+
+	/** Number of children requested per page from the ChildLoader */
+	public void setPageSize(int pageSize) {
+		this.pageSize = Math.max(1, pageSize);
 	}
 
 	public void attachTo(LinearLayout container) {
@@ -26,52 +156,586 @@ public abstract class TreeViewAdapter<T> {
 		refresh();
 	}
 
+	/**
+	 * Renders the tree through a recycling ListView. Only on-screen rows are
+	 * bound, and row views are handed back to {@link #bindView} for reuse.
+	 */
+	public void attachTo(ListView listView) {
+		this.listView = listView;
+		visibleNodes.rebuild();
+		listView.setAdapter(rowAdapter);
+	}
+
+	/**
+	 * Rebuilds every row, picking up any direct writes to node fields. Prefer
+	 * the notify methods below for small changes.
+	 */
 	public void refresh() {
+		TreeMetrics measured = beginOperation(TreeMetrics.REFRESH, null);
+		try {
+			cancelPendingChanges();
+			visibleNodes.rebuild();
+			rebuildViews();
+		} finally {
+			if (measured != null)
+				endOperation(measured);
+		}
+	}
+
+	private void rebuildViews() {
+		if (listView != null) {
+			rowAdapter.notifyDataSetChanged();
+		}
 		if (container == null)
 			return;
+		for (int i = 0; i < container.getChildCount(); i++) {
+			recycle(container.getChildAt(i));
+		}
 		container.removeAllViews();
-		for (TreeNode<T> rootNode : roots) {
-			renderNode(rootNode, 0);
+		for (int i = 0; i < visibleNodes.size(); i++) {
+			container.addView(buildRow(visibleNodes.get(i)));
 		}
 	}
 
-	private void renderNode(TreeNode<T> node, int level) {
-		View view = createView(context, node, level);
+	// === Partial updates ===
 
-		// Add default click handlers if view is not null
-		if (view != null) {
-			view.setOnClickListener(v -> {
-				if (!node.isEmpty()) {
-					node.expanded = !node.expanded;
-					if (listener != null) {
-						if (node.expanded)
-							listener.onNodeExpand(node);
-						else
-							listener.onNodeCollapse(node);
-					}
-					refresh();
+	/** Rebinds the node's row after its data or appearance changed */
+	public void notifyNodeChanged(TreeNode<T> node) {
+		flushChanges();
+		visibleNodes.notifyChanged(node);
+	}
+
+	/**
+	 * Adds rows for {@code count} children already inserted into the parent at
+	 * {@code start}. Pass a null parent for nodes added to the roots.
+	 */
+	public void notifyChildrenInserted(TreeNode<T> parent, int start, int count) {
+		flushChanges();
+		visibleNodes.insertChildren(parent, start, count);
+	}
+
+	/** Removes the rows of a node after it was removed from the tree; scans the rows for it */
+	public void notifyNodeRemoved(TreeNode<T> node) {
+		flushChanges();
+		visibleNodes.remove(node);
+	}
+
+	/**
+	 * Removes the rows of a node after it was removed from the parent (null
+	 * for the roots), and rebinds the parent's row
+	 */
+	public void notifyNodeRemoved(TreeNode<T> parent, TreeNode<T> node) {
+		flushChanges();
+		visibleNodes.remove(parent, node);
+	}
+
+	/**
+	 * Shows only the rows the filter accepts, such as a {@link TreeSearch.Result};
+	 * null shows the whole tree again. The nodes' expanded flags are kept.
+	 */
+	public void setFilter(VisibleNodeList.Filter<T> filter) {
+		cancelPendingChanges();
+		visibleNodes.setFilter(filter);
+		rebuildViews();
+	}
+
+	public VisibleNodeList.Filter<T> getFilter() {
+		return visibleNodes.getFilter();
+	}
+
+	/** Whether the node's children are shown, taking the filter into account */
+	protected boolean isExpanded(TreeNode<T> node) {
+		return visibleNodes.isExpanded(node);
+	}
+
+	/** Expands the node, adding only its subtree's rows */
+	public void expandNode(TreeNode<T> node) {
+		TreeMetrics measured = beginOperation(TreeMetrics.EXPAND, node);
+		try {
+			flushChanges();
+			if (isExpanded(node))
+				return;
+			visibleNodes.expand(node);
+			if (node.isLazy() && childLoader != null) {
+				if (node.isEmpty())
+					loadNextPage(node);
+				else
+					showPendingRow(node);
+			}
+			if (listener != null)
+				listener.onNodeExpand(node);
+		} finally {
+			if (measured != null)
+				endOperation(measured);
+		}
+	}
+
+	/** Collapses the node, removing only its subtree's rows */
+	public void collapseNode(TreeNode<T> node) {
+		TreeMetrics measured = beginOperation(TreeMetrics.COLLAPSE, node);
+		try {
+			flushChanges();
+			if (!isExpanded(node))
+				return;
+			if (node.loadTask != null) {
+				node.loadTask.cancel(true);
+				node.loadTask = null;
+			}
+			visibleNodes.collapse(node);
+			node.setPendingRow(null);
+			if (listener != null)
+				listener.onNodeCollapse(node);
+		} finally {
+			if (measured != null)
+				endOperation(measured);
+		}
+	}
+
+	// === Transactions ===
+
+	/**
+	 * Starts a batch of edits to this adapter's tree. Its commit edits the
+	 * tree at once, and the rows follow on the next frame together with any
+	 * other transaction committed before it.
+	 */
+	public TreeTransaction<T> beginTransaction() {
+		return new TreeTransaction<>(roots, this);
+	}
+
+	/**
+	 * Schedules the rows of a committed change set for the next frame.
+	 * Change sets arriving before then are merged and applied in one pass.
+	 */
+	public void applyChanges(TreeTransaction.ChangeSet<T> changes) {
+		if (changes.isEmpty())
+			return;
+		if (pendingChanges == null) {
+			pendingChanges = new TreeTransaction.ChangeSet<>();
+			Choreographer.getInstance().postFrameCallback(frameCallback);
+		}
+		pendingChanges.merge(changes);
+	}
+
+	/**
+	 * Updates the rows for changes waiting for the next frame right away.
+	 * Other row updates call this first, so they never see stale rows.
+	 */
+	public void flushChanges() {
+		TreeTransaction.ChangeSet<T> changes = pendingChanges;
+		if (changes == null)
+			return;
+		TreeMetrics measured = beginOperation(TreeMetrics.CHANGES, null);
+		try {
+			cancelPendingChanges();
+			if (!changes.structural && changes.changed.size() <= MAX_SINGLE_REBINDS) {
+				for (TreeNode<T> node : changes.changed) {
+					visibleNodes.notifyChanged(node);
 				}
-				if (listener != null)
-					listener.onNodeClick(node);
+				return;
+			}
+			// Moved subtrees changed level, rebind their visible rows
+			Set<TreeNode<T>> rebind = changes.changed;
+			for (TreeNode<T> node : changes.moved) {
+				for (TreeNode<T> row : TreeTraversal.iterate(node, TreeTraversal.Order.VISIBLE)) {
+					rebind.add(row);
+				}
+			}
+			visibleNodes.update(rebind);
+		} finally {
+			if (measured != null)
+				endOperation(measured);
+		}
+	}
+
+	private void cancelPendingChanges() {
+		if (pendingChanges == null)
+			return;
+		pendingChanges = null;
+		Choreographer.getInstance().removeFrameCallback(frameCallback);
+	}
+
+	// === Metrics ===
+
+	/**
+	 * Reports timings and view counts of every refresh, expand, collapse and
+	 * row update to the listener, and adds trace sections for them. Pass null
+	 * to turn it off again.
+	 */
+	public void setMetricsListener(TreeMetrics.Listener listener) {
+		if (metrics != null && metrics.active && metrics.operation == TreeMetrics.BIND)
+			Choreographer.getInstance().removeFrameCallback(metricsFrameCallback);
+		metricsListener = listener;
+		metrics = listener != null ? new TreeMetrics() : null;
+	}
+
+	/** The operation being measured, for subclasses adding format times; null when metrics are off */
+	protected TreeMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Starts measuring unless metrics are off or an outer operation is
+	 * measured; returns the metrics to pass to endOperation, or null.
+	 */
+	private TreeMetrics beginOperation(int operation, TreeNode<T> node) {
+		TreeMetrics m = metrics;
+		if (m == null)
+			return null;
+		if (m.active) {
+			if (m.operation != TreeMetrics.BIND)
+				return null;
+			// Binds of this frame so far are reported on their own
+			Choreographer.getInstance().removeFrameCallback(metricsFrameCallback);
+			endOperation(m);
+		}
+		m.begin(operation, node);
+		Trace.beginSection("TreeView " + TreeMetrics.nameOf(operation));
+		m.traced = true;
+		return m;
+	}
+
+	/**
+	 * Ends the operation begun on these metrics. The trace section is closed
+	 * even if the listener was replaced or removed meanwhile; only the
+	 * current listener's own metrics are reported.
+	 */
+	private void endOperation(TreeMetrics m) {
+		if (m == null || !m.active)
+			return;
+		// Binds are traced one by one, only operations have their own section
+		if (m.traced) {
+			m.traced = false;
+			Trace.endSection();
+		}
+		m.end(visibleNodes.size());
+		if (m == metrics)
+			metricsListener.onOperation(m);
+	}
+
+	/** Calls bindView, measuring it when metrics are on */
+	private View bindRow(View convertView, TreeNode<T> node) {
+		TreeMetrics m = metrics;
+		if (m == null)
+			return bindView(context, convertView, node, node.getLevel());
+		if (!m.active) {
+			// Outside an operation, e.g. a ListView scrolling: collect this frame's binds
+			m.begin(TreeMetrics.BIND, null);
+			Choreographer.getInstance().postFrameCallback(metricsFrameCallback);
+		}
+		Trace.beginSection("TreeView bindView");
+		long start = System.nanoTime();
+		try {
+			View view = bindView(context, convertView, node, node.getLevel());
+			m.rowBound(System.nanoTime() - start, view != null && view == convertView);
+			return view;
+		} finally {
+			Trace.endSection();
+		}
+	}
+
+	// === Tree replacement ===
+
+	/**
+	 * Replaces the shown tree with {@code newRoots}. The diff against the
+	 * current rows is computed on a background thread, matching nodes by key,
+	 * and only the rows that were inserted, removed or changed are touched.
+	 * Nodes keep their expanded state across the swap. Until the new tree is
+	 * applied the current tree must not be edited; a later call supersedes a
+	 * pending one.
+	 */
+	public void submitTree(TreeRoot<T> newRoots, KeyExtractor<T> keys) {
+		submitDiff(newRoots, null, keys);
+	}
+
+	/**
+	 * Shows a snapshot of a {@link ConcurrentTreeModel}, as
+	 * {@link #submitTree} does. The snapshot is converted to a new tree on the
+	 * diff thread, so writers to the model never touch the adapter's nodes.
+	 */
+	public void submitSnapshot(ConcurrentTreeModel.Snapshot<T> snapshot, KeyExtractor<T> keys) {
+		submitDiff(null, snapshot, keys);
+	}
+
+	private void submitDiff(TreeRoot<T> newRoots, ConcurrentTreeModel.Snapshot<T> snapshot, KeyExtractor<T> keys) {
+		flushChanges();
+		if (diffExecutor == null)
+			diffExecutor = Executors.newSingleThreadExecutor();
+		final int generation = ++diffGeneration;
+		final TreeRoot<T> oldRoots = roots;
+		final List<TreeNode<T>> oldRows = visibleNodes.snapshot();
+		final int baseVersion = visibleNodes.getVersion();
+		diffExecutor.execute(() -> {
+			if (generation != diffGeneration)
+				return; // superseded before it started
+			TreeRoot<T> target = newRoots != null ? newRoots : snapshot.toTreeRoot();
+			TreeDiff.Result<T> diff = TreeDiff.calculate(oldRoots, oldRows, baseVersion, target, keys);
+			mainHandler.post(() -> {
+				if (generation == diffGeneration)
+					applyDiff(diff);
 			});
+		});
+	}
 
-			view.setOnLongClickListener(v -> {
-				if (listener != null) {
-					listener.onNodeLongClick(node);
-					return true;
+	private void applyDiff(TreeDiff.Result<T> diff) {
+		TreeMetrics measured = beginOperation(TreeMetrics.DIFF, null);
+		try {
+			for (int i = 0; i < visibleNodes.size(); i++) {
+				TreeNode<T> row = visibleNodes.get(i);
+				if (row.isPlaceholder() && row.parent.loadTask != null) {
+					row.parent.loadTask.cancel(true);
+					row.parent.loadTask = null;
 				}
-				return false;
-			});
+			}
+			roots = diff.getNewRoots();
+			if (!visibleNodes.replace(diff)) {
+				// Rows changed while the diff ran, fall back to a full rebind
+				refresh();
+				return;
+			}
+			if (listView != null) {
+				rowAdapter.notifyDataSetChanged();
+			}
+			if (container != null) {
+				// Unchanged rows keep their views, only the click targets move
+				for (int i = 0; i < container.getChildCount(); i++) {
+					View view = container.getChildAt(i);
+					if (!placeholderViews.contains(view))
+						attachClickHandlers(view, visibleNodes.get(i));
+				}
+			}
+		} finally {
+			if (measured != null)
+				endOperation(measured);
 		}
+	}
+
+	// === Lazy loading ===
+
+	private void showPendingRow(TreeNode<T> parent) {
+		if (parent.pendingRow == null) {
+			parent.setPendingRow(TreeNode.placeholderFor(parent));
+		}
+		visibleNodes.insertPendingRow(parent);
+	}
 
-		container.addView(view);
-		
-		if (node.expanded) {
-			for (TreeNode<T> child : node.getChildren()) {
-				renderNode(child, level + 1);
+	private void loadNextPage(TreeNode<T> parent) {
+		if (parent.loadTask != null || childLoader == null || !isExpanded(parent))
+			return;
+		final int offset = parent.getChildCount();
+		final int limit = pageSize;
+		final ChildLoader<T> loader = childLoader;
+		final Future<?>[] task = new Future<?>[1];
+		task[0] = loadExecutor.submit(() -> {
+			List<TreeNode<T>> page = null;
+			Exception error = null;
+			try {
+				page = loader.loadChildren(parent, offset, limit);
+			} catch (Exception e) {
+				error = e;
+			}
+			final List<TreeNode<T>> result = page;
+			final Exception failure = error;
+			mainHandler.post(() -> onPageLoaded(parent, task[0], offset, limit, result, failure));
+		});
+		parent.loadTask = task[0];
+		parent.loadError = null;
+		showPendingRow(parent);
+		visibleNodes.notifyChanged(parent.pendingRow);
+	}
+
+	private void onPageLoaded(TreeNode<T> parent, Future<?> task, int offset, int limit, List<TreeNode<T>> page, Exception error) {
+		if (parent.loadTask != task)
+			return; // cancelled by a collapse, or superseded
+		TreeMetrics measured = beginOperation(TreeMetrics.PAGE_LOADED, parent);
+		try {
+			parent.loadTask = null;
+			flushChanges();
+			visibleNodes.removePendingRow(parent);
+			if (page == null) {
+				// Failed: keep the node lazy so the placeholder offers a retry; it
+				// is not loaded again until clicked
+				parent.loadError = error != null ? error : new IllegalStateException("ChildLoader returned null");
+				showPendingRow(parent);
+				if (listener != null)
+					listener.onLoadError(parent, parent.loadError);
+				else
+					Log.w("TreeViewAdapter", "Loading children failed", parent.loadError);
+				return;
 			}
+			parent.addChildren(page);
+			visibleNodes.insertChildren(parent, offset, page.size());
+			if (page.size() < limit) {
+				parent.setLazy(false);
+				visibleNodes.notifyChanged(parent);
+			} else {
+				showPendingRow(parent);
+			}
+		} finally {
+			if (measured != null)
+				endOperation(measured);
 		}
 	}
 
+	/**
+	 * Creates the row shown under a lazy node while a page loads, or when more
+	 * pages are available. Override to style it.
+	 */
+	protected View createPlaceholderView(Context ctx, TreeNode<T> parent, boolean loading, int level) {
+		TextView view = new TextView(ctx);
+		view.setPadding(24 + level * 20, 16, 24, 16);
+		view.setText(loading ? "Loading\u2026" : "Load more");
+		return view;
+	}
+
+	/**
+	 * Like the method above, with the failure of the last page load, or null.
+	 * The default shows a retry row on failure and otherwise calls the method
+	 * above.
+	 */
+	protected View createPlaceholderView(Context ctx, TreeNode<T> parent, boolean loading, Exception error, int level) {
+		if (loading || error == null)
+			return createPlaceholderView(ctx, parent, loading, level);
+		TextView view = new TextView(ctx);
+		view.setPadding(24 + level * 20, 16, 24, 16);
+		view.setText("Could not load, tap to retry");
+		return view;
+	}
+
+	private View buildRow(TreeNode<T> node) {
+		if (node.isPlaceholder()) {
+			View view = buildPlaceholderRow(node);
+			placeholderViews.add(view);
+			return view;
+		}
+		return attachClickHandlers(bindRow(scrap.poll(), node), node);
+	}
+
+	private View buildPlaceholderRow(TreeNode<T> row) {
+		TreeNode<T> parent = row.parent;
+		View view = createPlaceholderView(context, parent, parent.isLoading(), parent.getLoadError(), parent.getLevel() + 1);
+		if (view != null) {
+			view.setOnClickListener(v -> loadNextPage(parent));
+		}
+		return view;
+	}
+
+	private void rebindRow(int index) {
+		if (listView != null && visibleNodes.get(index).isPlaceholder()) {
+			rowAdapter.notifyDataSetChanged();
+		} else if (listView != null) {
+			int first = listView.getFirstVisiblePosition();
+			if (index >= first && index <= listView.getLastVisiblePosition()) {
+				View child = listView.getChildAt(index - first);
+				// A new view is not on screen; let the ListView rebind the rows
+				if (rowAdapter.getView(index, child, listView) != child)
+					rowAdapter.notifyDataSetChanged();
+			}
+		}
+		if (container != null) {
+			TreeNode<T> node = visibleNodes.get(index);
+			View old = container.getChildAt(index);
+			if (!node.isPlaceholder() && !placeholderViews.contains(old)) {
+				// Rebind in place when the subclass reuses the view
+				View view = bindRow(old, node);
+				if (view == old) {
+					attachClickHandlers(view, node);
+					return;
+				}
+				recycle(old);
+				container.removeViewAt(index);
+				container.addView(attachClickHandlers(view, node), index);
+				return;
+			}
+			recycle(old);
+			container.removeViewAt(index);
+			container.addView(buildRow(node), index);
+		}
+	}
+
+	private void recycle(View view) {
+		if (view == null || placeholderViews.remove(view))
+			return;
+		view.setOnClickListener(null);
+		view.setOnLongClickListener(null);
+		if (scrap.size() < MAX_SCRAP)
+			scrap.add(view);
+	}
+
+	/** Adds the default click handlers if the view is not null */
+	private View attachClickHandlers(View view, TreeNode<T> node) {
+		if (view == null)
+			return null;
+		view.setOnClickListener(v -> {
+			if (node.isExpandable()) {
+				if (isExpanded(node))
+					collapseNode(node);
+				else
+					expandNode(node);
+			}
+			if (listener != null)
+				listener.onNodeClick(node);
+		});
+
+		view.setOnLongClickListener(v -> {
+			if (listener != null) {
+				listener.onNodeLongClick(node);
+				return true;
+			}
+			return false;
+		});
+		return view;
+	}
+
 	protected abstract View createView(Context ctx, TreeNode<T> node, int level);
-}
\ No newline at end of file
+
+	/**
+	 * Binds a row. {@code convertView} is a row that scrolled off screen or was
+	 * removed by a collapse, or null. The default ignores it and calls
+	 * {@link #createView}; override to reuse it.
+	 */
+	protected View bindView(Context ctx, View convertView, TreeNode<T> node, int level) {
+		return createView(ctx, node, level);
+	}
+
+	private class RowAdapter extends BaseAdapter {
+
+		@Override
+		public int getCount() {
+			return visibleNodes.size();
+		}
+
+		@Override
+		public TreeNode<T> getItem(int position) {
+			return visibleNodes.get(position);
+		}
+
+		@Override
+		public long getItemId(int position) {
+			return position;
+		}
+
+		@Override
+		public int getViewTypeCount() {
+			return 2;
+		}
+
+		@Override
+		public int getItemViewType(int position) {
+			return visibleNodes.get(position).isPlaceholder() ? 1 : 0;
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			TreeNode<T> node = visibleNodes.get(position);
+			if (node.isPlaceholder()) {
+				// Scrolling to the end of a paged list pulls in the next page; after a failure only a click retries
+				if (!node.parent.isLoading() && node.parent.getLoadError() == null) {
+					TreeNode<T> owner = node.parent;
+					mainHandler.post(() -> loadNextPage(owner));
+				}
+				return buildPlaceholderRow(node);
+			}
+			return attachClickHandlers(bindRow(convertView, node), node);
+		}
+	}
+}
@@ -5,4 +5,6 @@ public interface TreeViewListener<T> {
 	default void onNodeLongClick(TreeNode<T> node){}
 	default void onNodeExpand(TreeNode<T> node){}
 	default void onNodeCollapse(TreeNode<T> node){}
+	/** A page of the node's children failed to load; the placeholder row offers a retry */
+	default void onLoadError(TreeNode<T> node, Exception error){}
 }
\ No newline at end of file
@@ -0,0 +1,478 @@
+package com.hichem.soft.tree.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Flattened list of the rows currently visible in a tree. Expanding or
+ * collapsing a node splices only that node's visible subtree in or out,
+ * and the affected range is reported to the {@link RangeListener}.
+ */
+public class VisibleNodeList<T> {
+
+	public interface RangeListener {
+		void onRangeInserted(int start, int count);
+		void onRangeRemoved(int start, int count);
+		default void onRangeChanged(int start, int count) {}
+	}
+
+	/**
+	 * Narrows the rows to a subset of the tree, such as search results, with
+	 * its own expanded state so the nodes' {@code expanded} flags are left
+	 * alone. A node is only asked about once its parent has a row.
+	 */
+	public interface Filter<T> {
+		boolean accept(TreeNode<T> node);
+		boolean isExpanded(TreeNode<T> node);
+		void setExpanded(TreeNode<T> node, boolean expanded);
+	}
+
+	private TreeRoot<T> roots;
+	private final ArrayList<TreeNode<T>> rows = new ArrayList<>();
+	private RangeListener listener;
+	private Filter<T> filter;
+	// Bumped on every change to the rows, so stale diffs can be detected
+	private int version;
+
+	public VisibleNodeList(TreeRoot<T> roots) {
+		this.roots = roots;
+		rebuild();
+	}
+
+	public void setRangeListener(RangeListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Recomputes the cached counts and re-flattens the whole tree, picking up
+	 * direct writes to {@code expanded}; no range events are sent
+	 */
+	public void rebuild() {
+		for (TreeNode<T> root : roots) {
+			root.recomputeCounts();
+		}
+		flatten();
+	}
+
+	/** Sets or clears (null) the filter and re-flattens; no range events are sent */
+	public void setFilter(Filter<T> filter) {
+		this.filter = filter;
+		flatten();
+	}
+
+	private void flatten() {
+		version++;
+		rows.clear();
+		collectVisible(roots, rows);
+	}
+
+	public Filter<T> getFilter() {
+		return filter;
+	}
+
+	/** Whether the node's children are shown, taking the filter into account */
+	public boolean isExpanded(TreeNode<T> node) {
+		return filter != null ? filter.isExpanded(node) : node.expanded;
+	}
+
+	private void setExpanded(TreeNode<T> node, boolean expanded) {
+		if (filter != null)
+			filter.setExpanded(node, expanded);
+		else
+			node.setExpanded(expanded);
+	}
+
+	/** Number of rows under the row at index, from the cached counts when unfiltered */
+	private int rowsBelow(int index) {
+		TreeNode<T> node = rows.get(index);
+		if (filter == null)
+			return isExpanded(node) ? node.visibleDescendants : 0;
+		int level = node.getLevel();
+		int end = index + 1;
+		while (end < rows.size() && rows.get(end).getLevel() > level)
+			end++;
+		return end - index - 1;
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	public TreeNode<T> get(int index) {
+		return rows.get(index);
+	}
+
+	public TreeRoot<T> getRoots() {
+		return roots;
+	}
+
+	/** Copy of the current rows, for diffing off the main thread */
+	public List<TreeNode<T>> snapshot() {
+		return new ArrayList<>(rows);
+	}
+
+	/** Changes whenever rows are added, removed or rebuilt */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Switches to the diff's new tree, sending one range event per inserted or
+	 * removed run and a changed event for matched rows whose content differs.
+	 * If the rows changed since the diff's snapshot, or a filter is set, the
+	 * list is rebuilt without events and false is returned.
+	 */
+	public boolean replace(TreeDiff.Result<T> diff) {
+		roots = diff.newRoots;
+		if (filter != null || diff.baseVersion != version || diff.oldSize != rows.size()) {
+			rebuild();
+			return false;
+		}
+		splice(diff.diagonals, diff.diagonalCount, diff.newRows, diff.changed);
+		return true;
+	}
+
+	/**
+	 * Brings the rows up to date after the tree was edited in place, such as
+	 * by a {@link TreeTransaction}. Rows are matched by identity against a
+	 * fresh flattening; only inserted and removed runs get range events, and
+	 * matched rows get a changed event if their node is in {@code changed}.
+	 */
+	public void update(Set<TreeNode<T>> changed) {
+		ArrayList<TreeNode<T>> newRows = new ArrayList<>(rows.size());
+		collectVisible(roots, newRows);
+		TreeDiff.Diagonals diagonals = TreeDiff.diff(rows.toArray(), newRows.toArray());
+		BitSet changedRows = new BitSet();
+		for (int d = 0; d < diagonals.count; d++) {
+			int y = diagonals.data[d * 3 + 1];
+			int length = diagonals.data[d * 3 + 2];
+			for (int i = y; i < y + length; i++) {
+				if (changed.contains(newRows.get(i)))
+					changedRows.set(i);
+			}
+		}
+		splice(diagonals.data, diagonals.count, newRows, changedRows);
+	}
+
+	/** Turns the rows into newRows given the matched runs, sending range events */
+	private void splice(int[] diagonals, int diagonalCount, List<TreeNode<T>> newRows, BitSet changed) {
+		version++;
+
+		// Walk the matched runs backwards so earlier indexes stay valid
+		int oldPos = rows.size();
+		int newPos = newRows.size();
+		for (int d = diagonalCount - 1; d >= -1; d--) {
+			int x = d >= 0 ? diagonals[d * 3] : 0;
+			int y = d >= 0 ? diagonals[d * 3 + 1] : 0;
+			int length = d >= 0 ? diagonals[d * 3 + 2] : 0;
+			int oldEnd = x + length;
+			int newEnd = y + length;
+			if (oldPos > oldEnd) {
+				rows.subList(oldEnd, oldPos).clear();
+				if (listener != null)
+					listener.onRangeRemoved(oldEnd, oldPos - oldEnd);
+			}
+			if (newPos > newEnd) {
+				rows.addAll(oldEnd, newRows.subList(newEnd, newPos));
+				if (listener != null)
+					listener.onRangeInserted(oldEnd, newPos - newEnd);
+			}
+			// Matched rows keep their slot but point at the new nodes
+			for (int i = 0; i < length; i++) {
+				rows.set(x + i, newRows.get(y + i));
+			}
+			oldPos = x;
+			newPos = y;
+		}
+
+		if (listener != null) {
+			for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+				listener.onRangeChanged(i, 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the row index of the node, or -1 if it is hidden. Computed from
+	 * the cached row offsets of the node and its ancestors among their
+	 * siblings, in O(depth) once the offsets are cached.
+	 */
+	public int indexOf(TreeNode<T> node) {
+		if (filter != null)
+			return rows.indexOf(node); // counts do not know about the filter
+		int index = rowIndexOf(node);
+		if (index >= 0 && index < rows.size() && rows.get(index) == node)
+			return index;
+		return rows.indexOf(node); // counts out of date, fall back to a scan
+	}
+
+	private int rowIndexOf(TreeNode<T> node) {
+		if (node.isPlaceholder()) {
+			TreeNode<T> parent = node.parent;
+			if (parent.pendingRow != node || !parent.expanded)
+				return -1;
+			int parentIndex = rowIndexOf(parent);
+			return parentIndex < 0 ? -1 : parentIndex + parent.visibleDescendants;
+		}
+		int index = 0;
+		TreeNode<T> current = node;
+		while (true) {
+			TreeNode<T> parent = current.parent;
+			TreeRoot<T> siblings = parent != null ? parent.getChildren() : roots;
+			int position = siblings.positionOf(current);
+			if (position < 0)
+				return -1;
+			index += siblings.rowsBefore(position);
+			if (parent == null)
+				return index;
+			if (!parent.expanded)
+				return -1;
+			index++; // the parent's own row
+			current = parent;
+		}
+	}
+
+	/** Expands or collapses the node, returns true if it is now expanded */
+	public boolean toggle(TreeNode<T> node) {
+		if (isExpanded(node)) {
+			collapse(node);
+			return false;
+		}
+		expand(node);
+		return true;
+	}
+
+	/** Expands the node and inserts its visible subtree below it */
+	public void expand(TreeNode<T> node) {
+		if (isExpanded(node))
+			return;
+		setExpanded(node, true);
+		int index = indexOf(node);
+		if (index < 0)
+			return; // under a collapsed ancestor, nothing on screen changes
+		if (listener != null)
+			listener.onRangeChanged(index, 1);
+
+		List<TreeNode<T>> added = new ArrayList<>();
+		collectBelow(node, added);
+		if (added.isEmpty())
+			return;
+		version++;
+		rows.addAll(index + 1, added);
+		if (listener != null)
+			listener.onRangeInserted(index + 1, added.size());
+	}
+
+	/** Reports the node's row as changed if it is visible */
+	public void notifyChanged(TreeNode<T> node) {
+		int index = indexOf(node);
+		if (index >= 0 && listener != null)
+			listener.onRangeChanged(index, 1);
+	}
+
+	/**
+	 * Inserts rows for {@code count} children already added to the parent at
+	 * {@code start}; a null parent means top-level nodes. Nothing is inserted
+	 * if the parent is collapsed or hidden.
+	 */
+	public void insertChildren(TreeNode<T> parent, int start, int count) {
+		int index = 0;
+		TreeRoot<T> children = roots;
+		if (parent != null) {
+			int parentIndex = indexOf(parent);
+			if (parentIndex < 0)
+				return;
+			notifyChanged(parent); // may have gained its first child
+			if (!isExpanded(parent))
+				return;
+			children = parent.getChildren();
+			index = parentIndex + 1;
+		}
+		if (count <= 0)
+			return;
+
+		if (filter == null) {
+			index += children.rowsBefore(start);
+		} else {
+			// Skip the rows of the earlier siblings that passed the filter
+			int childLevel = parent != null ? parent.getLevel() + 1 : 0;
+			while (index < rows.size()) {
+				TreeNode<T> row = rows.get(index);
+				int level = row.getLevel();
+				if (level < childLevel || (level == childLevel
+						&& (row.isPlaceholder() || row.getIndexInParent() >= start)))
+					break;
+				index++;
+			}
+		}
+
+		List<TreeNode<T>> added = new ArrayList<>();
+		for (int i = start; i < start + count; i++) {
+			TreeNode<T> child = children.get(i);
+			if (filter != null && !filter.accept(child))
+				continue;
+			added.add(child);
+			if (isExpanded(child)) {
+				collectBelow(child, added);
+			}
+		}
+		if (added.isEmpty())
+			return;
+		version++;
+		rows.addAll(index, added);
+		if (listener != null)
+			listener.onRangeInserted(index, added.size());
+	}
+
+	/**
+	 * Removes the rows of a node that was just removed from the tree, along
+	 * with its visible subtree. Scans for the node's row; prefer
+	 * {@link #remove(TreeNode, TreeNode)} when the former parent is known.
+	 */
+	public void remove(TreeNode<T> node) {
+		int index = rows.indexOf(node);
+		if (index < 0)
+			return;
+		// The nearest row above at a lower level is the former parent
+		int parentIndex = index - 1;
+		while (parentIndex >= 0 && rows.get(parentIndex).getLevel() >= node.getLevel())
+			parentIndex--;
+		removeRows(index, parentIndex);
+	}
+
+	/**
+	 * Removes the rows of a node that was just removed from the parent (null
+	 * for a top-level node), along with its visible subtree, and rebinds the
+	 * parent's row, which may have lost its last child. Only the parent's
+	 * rows are searched for the node.
+	 */
+	public void remove(TreeNode<T> parent, TreeNode<T> node) {
+		int parentIndex = -1;
+		int parentLevel = -1;
+		if (parent != null) {
+			parentIndex = indexOf(parent);
+			if (parentIndex < 0)
+				return;
+			parentLevel = parent.getLevel();
+		}
+		for (int i = parentIndex + 1; i < rows.size(); i++) {
+			TreeNode<T> row = rows.get(i);
+			if (row == node) {
+				removeRows(i, parentIndex);
+				return;
+			}
+			if (row.getLevel() <= parentLevel)
+				break;
+		}
+		if (parentIndex >= 0 && listener != null)
+			listener.onRangeChanged(parentIndex, 1); // collapsed, but may have lost its last child
+	}
+
+	/** Removes the node's row and visible subtree, then reports the parent's row (-1 for none) as changed */
+	private void removeRows(int index, int parentIndex) {
+		int count = 1 + rowsBelow(index);
+		version++;
+		rows.subList(index, index + count).clear();
+		if (listener != null) {
+			listener.onRangeRemoved(index, count);
+			if (parentIndex >= 0)
+				listener.onRangeChanged(parentIndex, 1);
+		}
+	}
+
+	/**
+	 * Shows the parent's placeholder row after its children, if the parent is
+	 * expanded and visible.
+	 */
+	public void insertPendingRow(TreeNode<T> parent) {
+		if (parent.pendingRow == null || !isExpanded(parent))
+			return;
+		int parentIndex = indexOf(parent);
+		if (parentIndex < 0 || indexOf(parent.pendingRow) >= 0)
+			return;
+		// The unfiltered count already includes the pending row
+		int index = filter == null ? parentIndex + parent.visibleDescendants : parentIndex + 1 + rowsBelow(parentIndex);
+		version++;
+		rows.add(index, parent.pendingRow);
+		if (listener != null)
+			listener.onRangeInserted(index, 1);
+	}
+
+	/** Removes the parent's placeholder row and detaches it from the parent */
+	public void removePendingRow(TreeNode<T> parent) {
+		TreeNode<T> row = parent.pendingRow;
+		if (row == null)
+			return;
+		int index = indexOf(row);
+		parent.setPendingRow(null);
+		if (index < 0)
+			return;
+		version++;
+		rows.remove(index);
+		if (listener != null)
+			listener.onRangeRemoved(index, 1);
+	}
+
+	/** Collapses the node and removes its visible subtree */
+	public void collapse(TreeNode<T> node) {
+		if (!isExpanded(node))
+			return;
+		int index = indexOf(node);
+		int count = index < 0 ? 0 : rowsBelow(index);
+		setExpanded(node, false);
+		if (index >= 0 && listener != null)
+			listener.onRangeChanged(index, 1);
+		if (count == 0)
+			return;
+		version++;
+		rows.subList(index + 1, index + 1 + count).clear();
+		if (listener != null)
+			listener.onRangeRemoved(index + 1, count);
+	}
+
+	private void collectVisible(TreeRoot<T> nodes, List<TreeNode<T>> out) {
+		collect(nodes, null, out);
+	}
+
+	/** Rows shown under an expanded node: its visible subtree and placeholder */
+	private void collectBelow(TreeNode<T> node, List<TreeNode<T>> out) {
+		collect(node.getChildren(), node, out);
+	}
+
+	/**
+	 * Appends the visible rows of the list, then the owner's placeholder if it
+	 * has one. Walks with an explicit stack, so deep trees cannot overflow.
+	 */
+	private void collect(List<TreeNode<T>> top, TreeNode<T> topOwner, List<TreeNode<T>> out) {
+		ArrayList<List<TreeNode<T>>> lists = new ArrayList<>();
+		ArrayList<TreeNode<T>> owners = new ArrayList<>();
+		int[] positions = new int[16];
+		lists.add(top);
+		owners.add(topOwner);
+		while (!lists.isEmpty()) {
+			int depth = lists.size() - 1;
+			List<TreeNode<T>> list = lists.get(depth);
+			if (positions[depth] == list.size()) {
+				TreeNode<T> owner = owners.remove(depth);
+				lists.remove(depth);
+				if (owner != null && owner.pendingRow != null)
+					out.add(owner.pendingRow);
+				continue;
+			}
+			TreeNode<T> node = list.get(positions[depth]++);
+			if (filter != null && !filter.accept(node))
+				continue;
+			out.add(node);
+			if (isExpanded(node)) {
+				if (depth + 1 == positions.length)
+					positions = Arrays.copyOf(positions, positions.length * 2);
+				positions[depth + 1] = 0;
+				lists.add(node.getChildren());
+				owners.add(node);
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.hichem.soft.tree.view;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NodeIndexTest {
+
+	/** Keys are the data up to the first '#', so "a#1" and "a#2" share key "a" */
+	private static TreeRoot<String> indexed() {
+		TreeRoot<String> roots = new TreeRoot<>();
+		roots.setKeyExtractor(data -> data.split("#")[0]);
+		return roots;
+	}
+
+	@Test
+	public void findsByKey() {
+		TreeRoot<String> roots = indexed();
+		TreeNode<String> a = roots.addNode("a");
+		TreeNode<String> b = new TreeNode<>("b");
+		a.addChild(b);
+		Assert.assertSame(a, roots.findNodeByKey("a"));
+		Assert.assertSame(b, roots.findNodeByKey("b"));
+		a.removeChild(b);
+		Assert.assertNull(roots.findNodeByKey("b"));
+	}
+
+	@Test
+	public void removingOneDuplicateKeepsTheOther() {
+		TreeRoot<String> roots = indexed();
+		TreeNode<String> first = roots.addNode("a#1");
+		TreeNode<String> second = roots.addNode("a#2");
+		Assert.assertSame(second, roots.findNodeByKey("a"));
+
+		roots.removeNode(second);
+		Assert.assertSame(first, roots.findNodeByKey("a"));
+		roots.removeNode(first);
+		Assert.assertNull(roots.findNodeByKey("a"));
+	}
+
+	@Test
+	public void removingTheHiddenDuplicateKeepsTheFound() {
+		TreeRoot<String> roots = indexed();
+		TreeNode<String> first = roots.addNode("a#1");
+		TreeNode<String> second = roots.addNode("a#2");
+		roots.removeNode(first);
+		Assert.assertSame(second, roots.findNodeByKey("a"));
+		roots.removeNode(second);
+		Assert.assertNull(roots.findNodeByKey("a"));
+	}
+
+	@Test
+	public void duplicatesInRemovedSubtree() {
+		TreeRoot<String> roots = indexed();
+		TreeNode<String> top = roots.addNode("a#1");
+		TreeNode<String> parent = roots.addNode("p");
+		parent.addChild(new TreeNode<>("a#2"));
+		roots.removeNode(parent);
+		Assert.assertSame(top, roots.findNodeByKey("a"));
+	}
+
+	@Test
+	public void rekeyKeepsDuplicates() {
+		TreeRoot<String> roots = indexed();
+		TreeNode<String> first = roots.addNode("a#1");
+		TreeNode<String> second = roots.addNode("a#2");
+		second.setData("b");
+		Assert.assertSame(first, roots.findNodeByKey("a"));
+		Assert.assertSame(second, roots.findNodeByKey("b"));
+	}
+}
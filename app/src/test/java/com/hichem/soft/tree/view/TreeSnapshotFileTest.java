@@ -0,0 +1,99 @@
+package com.hichem.soft.tree.view;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class TreeSnapshotFileTest {
+
+	// Layout of the snapshot of tree(): records a, b, c, d in breadth-first order
+	private static final int NODES = 4;
+	private static final int STYLES = 1;
+	private static final int HEADER = 24;
+	private static final int STYLES_OFFSET = HEADER + NODES * 16;
+	private static final int OFFSETS_OFFSET = STYLES_OFFSET + STYLES * 8;
+
+	/** a (expanded) with children b and c, b with child d */
+	private static TreeRoot<String> tree() {
+		TreeRoot<String> roots = new TreeRoot<>();
+		TreeNode<String> a = roots.addNode("a");
+		TreeNode<String> b = new TreeNode<>("b");
+		a.addChild(b);
+		a.addChild(new TreeNode<>("c"));
+		b.addChild(new TreeNode<>("d"));
+		a.setExpanded(true);
+		return roots;
+	}
+
+	private static byte[] snapshot() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TreeSnapshotFile.write(tree(), out);
+		return out.toByteArray();
+	}
+
+	private static TreeRoot<String> read(byte[] bytes) {
+		return new TreeSnapshotFile(ByteBuffer.wrap(bytes)).toTreeRoot();
+	}
+
+	private static byte[] corrupt(int offset, int value) throws IOException {
+		byte[] bytes = snapshot();
+		ByteBuffer.wrap(bytes).putInt(offset, value);
+		return bytes;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		TreeRoot<String> roots = read(snapshot());
+		Assert.assertEquals(1, roots.size());
+		TreeNode<String> a = roots.get(0);
+		Assert.assertEquals("a", a.data);
+		Assert.assertTrue(a.expanded);
+		Assert.assertEquals("b", a.getChildren().get(0).data);
+		Assert.assertEquals("c", a.getChildren().get(1).data);
+		Assert.assertEquals("d", a.getChildren().get(0).getChildren().get(0).data);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void hugeNodeCount() throws IOException {
+		read(corrupt(8, 0x10000000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void stringEndBeforeStart() throws IOException {
+		// "a" ends at 1, so it would start after its end
+		read(corrupt(OFFSETS_OFFSET, 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void stringPastBytes() throws IOException {
+		read(corrupt(OFFSETS_OFFSET + 4, 1000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void styleOutOfRange() throws IOException {
+		read(corrupt(HEADER + 16 + 12, 5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeChildCount() throws IOException {
+		read(corrupt(HEADER + 8, -1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void childPointingBackToAncestor() throws IOException {
+		// b's first child is a, which would make a cycle
+		read(corrupt(HEADER + 16 + 4, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void lazyChildPointingBackToAncestor() throws Exception {
+		// b is collapsed, so the cycle is only seen when its page is loaded
+		byte[] bytes = corrupt(HEADER + 16 + 4, 0);
+		TreeSnapshotFile file = new TreeSnapshotFile(ByteBuffer.wrap(bytes));
+		TreeNode<String> b = file.createRoots().get(0).getChildren().get(0);
+		file.childLoader().loadChildren(b, 0, 10);
+	}
+}
@@ -0,0 +1,67 @@
+package com.hichem.soft.tree.view.bench;
+
+import com.hichem.soft.tree.view.TreeBulk;
+import com.hichem.soft.tree.view.TreeNode;
+import com.hichem.soft.tree.view.TreeRoot;
+import com.hichem.soft.tree.view.TreeUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Fork-join bulk operations against their single-threaded counterparts */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkBenchmark {
+
+	@Param({TreeShapes.WIDE, TreeShapes.DEEP, TreeShapes.BALANCED})
+	public String shape;
+
+	@Param({"100000", "1000000"})
+	public int size;
+
+	private TreeRoot<String> tree;
+	private final TreeBulk bulk = new TreeBulk();
+
+	@Setup
+	public void setup() {
+		tree = TreeShapes.build(shape, size);
+	}
+
+	@Benchmark
+	public List<TreeNode<String>> leavesSequential() {
+		return TreeUtils.getLeafNodes(tree);
+	}
+
+	@Benchmark
+	public List<TreeNode<String>> leavesParallel() {
+		return bulk.filter(tree, TreeNode::isLeaf);
+	}
+
+	@Benchmark
+	public int countParallel() {
+		return bulk.count(tree, node -> node.data.hashCode() % 7 == 0);
+	}
+
+	@Benchmark
+	public TreeRoot<Integer> mapParallel() {
+		return bulk.map(tree, String::length);
+	}
+
+	/** Collapses everything then expands it again, leaving the tree unchanged */
+	@Benchmark
+	public TreeRoot<String> collapseExpandAll() {
+		bulk.setExpanded(tree, false);
+		bulk.setExpanded(tree, true);
+		return tree;
+	}
+}
@@ -0,0 +1,68 @@
+package com.hichem.soft.tree.view.bench;
+
+import com.hichem.soft.tree.view.TreeDiff;
+import com.hichem.soft.tree.view.TreeNode;
+import com.hichem.soft.tree.view.TreeRoot;
+import com.hichem.soft.tree.view.TreeTraversal;
+import com.hichem.soft.tree.view.VisibleNodeList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Keyed diff of the visible rows when a tree is replaced by a new copy */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DiffBenchmark {
+
+	@Param({TreeShapes.WIDE, TreeShapes.DEEP, TreeShapes.BALANCED})
+	public String shape;
+
+	@Param({"1000", "100000"})
+	public int size;
+
+	private TreeRoot<String> tree;
+	private List<TreeNode<String>> rows;
+	private TreeRoot<String> same;
+	private TreeRoot<String> edited;
+
+	@Setup
+	public void setup() {
+		tree = TreeShapes.build(shape, size);
+		rows = new VisibleNodeList<>(tree).snapshot();
+		same = TreeShapes.build(shape, size);
+
+		// Roughly 1% of the leaves removed and 1% of the nodes restyled
+		edited = TreeShapes.build(shape, size);
+		List<TreeNode<String>> leaves = new ArrayList<>();
+		int i = 0;
+		for (TreeNode<String> node : TreeTraversal.iterate(edited, TreeTraversal.Order.PRE_ORDER)) {
+			if (node.isLeaf() && leaves.size() * 100 < i)
+				leaves.add(node);
+			else if (i % 100 == 0)
+				node.iconResId = 1;
+			i++;
+		}
+		edited.removeNodes(leaves);
+	}
+
+	@Benchmark
+	public TreeDiff.Result<String> unchanged() {
+		return TreeDiff.calculate(tree, rows, 0, same, data -> data);
+	}
+
+	@Benchmark
+	public TreeDiff.Result<String> sparseEdits() {
+		return TreeDiff.calculate(tree, rows, 0, edited, data -> data);
+	}
+}
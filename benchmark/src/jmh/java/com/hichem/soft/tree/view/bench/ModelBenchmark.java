@@ -0,0 +1,88 @@
+package com.hichem.soft.tree.view.bench;
+
+import com.hichem.soft.tree.view.CompactTreeStore;
+import com.hichem.soft.tree.view.TreeNode;
+import com.hichem.soft.tree.view.TreeRoot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Construction, lookup, removal and aggregate reads on TreeRoot/TreeNode */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelBenchmark {
+
+	@Param({TreeShapes.WIDE, TreeShapes.DEEP, TreeShapes.BALANCED})
+	public String shape;
+
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+
+	private TreeRoot<String> tree;
+	private TreeRoot<String> indexed;
+	private String lastData;
+	private TreeNode<String> leaf;
+
+	@Setup
+	public void setup() {
+		tree = TreeShapes.build(shape, size);
+		indexed = TreeShapes.build(shape, size);
+		indexed.setKeyExtractor(data -> data);
+		// The last node created is the worst case for a pre-order scan
+		lastData = TreeShapes.dataOf(size - 1);
+		leaf = tree.findNodeByData(lastData);
+	}
+
+	@Benchmark
+	public TreeRoot<String> construct() {
+		return TreeShapes.build(shape, size);
+	}
+
+	/** Same tree in struct-of-arrays form */
+	@Benchmark
+	public CompactTreeStore<String> copyToCompactStore() {
+		return CompactTreeStore.copyOf(tree);
+	}
+
+	@Benchmark
+	public TreeNode<String> findNodeByData() {
+		return tree.findNodeByData(lastData);
+	}
+
+	@Benchmark
+	public TreeNode<String> findNodeByDataIndexed() {
+		return indexed.findNodeByData(lastData);
+	}
+
+	/** Removes a leaf and puts it back, leaving the tree unchanged */
+	@Benchmark
+	public TreeNode<String> removeNode() {
+		TreeNode<String> parent = leaf.parent;
+		int position = leaf.getIndexInParent();
+		tree.removeNode(leaf);
+		parent.getChildren().add(position, leaf);
+		return parent;
+	}
+
+	@Benchmark
+	public int getDescendantCount() {
+		return tree.get(0).getDescendantCount();
+	}
+
+	/** Full recount, the fallback after direct writes to node fields */
+	@Benchmark
+	public int recomputeCounts() {
+		TreeNode<String> root = tree.get(0);
+		root.recomputeCounts();
+		return root.getDescendantCount();
+	}
+}
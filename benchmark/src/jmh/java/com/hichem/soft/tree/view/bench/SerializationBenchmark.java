@@ -0,0 +1,149 @@
+package com.hichem.soft.tree.view.bench;
+
+import com.hichem.soft.tree.view.LazyJsonTree;
+import com.hichem.soft.tree.view.TreeNode;
+import com.hichem.soft.tree.view.TreeRoot;
+import com.hichem.soft.tree.view.TreeSnapshotFile;
+import com.hichem.soft.tree.view.TreeStateCodec;
+import com.hichem.soft.tree.view.TreeUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** JSON import/export and expansion-state persistence in TreeUtils and TreeStateCodec */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializationBenchmark {
+
+	@Param({TreeShapes.WIDE, TreeShapes.DEEP, TreeShapes.BALANCED})
+	public String shape;
+
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+
+	private TreeRoot<String> tree;
+	private String json;
+	private ByteBuffer jsonBytes;
+	private TreeNode<Object> anyTree;
+	private TreeNode<Object> labelTree;
+	private ByteBuffer snapshot;
+	private String state;
+	private byte[] pathState;
+	private byte[] keyState;
+
+	@Setup
+	public void setup() throws IOException {
+		tree = TreeShapes.build(shape, size);
+		json = TreeUtils.toJson(tree);
+		jsonBytes = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+		anyTree = TreeUtils.fromAnyJson(json);
+		labelTree = toLabels(anyTree);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TreeSnapshotFile.write(tree, bytes);
+		snapshot = ByteBuffer.wrap(bytes.toByteArray());
+		state = TreeUtils.saveTreeState(tree);
+		pathState = TreeStateCodec.saveByPath(tree);
+		keyState = TreeStateCodec.saveByKey(tree, data -> data);
+		tree.setKeyExtractor(data -> data);
+	}
+
+	@Benchmark
+	public String toJson() {
+		return TreeUtils.toJson(tree);
+	}
+
+	@Benchmark
+	public TreeRoot<String> fromJson() {
+		return TreeUtils.fromJson(json);
+	}
+
+	/** Cold start from a binary snapshot: only the expanded part is decoded */
+	@Benchmark
+	public TreeRoot<String> snapshotCreateRoots() {
+		return new TreeSnapshotFile(snapshot).createRoots();
+	}
+
+	@Benchmark
+	public TreeRoot<String> snapshotToTreeRoot() {
+		return new TreeSnapshotFile(snapshot).toTreeRoot();
+	}
+
+	/** Generic import of the same document, one node per JSON value */
+	@Benchmark
+	public TreeNode<Object> fromAnyJson() {
+		return TreeUtils.fromAnyJson(json);
+	}
+
+	/** Export of typed JsonEntry data */
+	@Benchmark
+	public String toAnyJson() {
+		return TreeUtils.toAnyJson(anyTree);
+	}
+
+	/** Export of the same tree with "key: value" string labels, parsed back per node */
+	@Benchmark
+	public String toAnyJsonFromLabels() {
+		return TreeUtils.toAnyJson(labelTree);
+	}
+
+	/** Lazy import: open the same document and load the first page under the top node */
+	@Benchmark
+	public List<TreeNode<Object>> lazyJsonFirstPage() throws Exception {
+		LazyJsonTree doc = new LazyJsonTree(jsonBytes);
+		TreeNode<Object> root = doc.root();
+		return doc.childLoader().loadChildren(root, 0, 100);
+	}
+
+	@Benchmark
+	public String saveTreeState() {
+		return TreeUtils.saveTreeState(tree);
+	}
+
+	@Benchmark
+	public TreeRoot<String> loadTreeState() {
+		TreeUtils.loadTreeState(tree, state);
+		return tree;
+	}
+
+	@Benchmark
+	public byte[] saveByPath() {
+		return TreeStateCodec.saveByPath(tree);
+	}
+
+	@Benchmark
+	public int restoreByPath() {
+		return TreeStateCodec.restoreByPath(tree, pathState);
+	}
+
+	@Benchmark
+	public byte[] saveByKey() {
+		return TreeStateCodec.saveByKey(tree, data -> data);
+	}
+
+	@Benchmark
+	public int restoreByKey() {
+		return TreeStateCodec.restoreByKey(tree, keyState, data -> data);
+	}
+
+	private static TreeNode<Object> toLabels(TreeNode<Object> node) {
+		TreeNode<Object> copy = new TreeNode<>(String.valueOf(node.data));
+		for (TreeNode<Object> child : node.getChildren()) {
+			copy.addChild(toLabels(child));
+		}
+		return copy;
+	}
+}
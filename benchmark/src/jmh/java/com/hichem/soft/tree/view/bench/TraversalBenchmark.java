@@ -0,0 +1,85 @@
+package com.hichem.soft.tree.view.bench;
+
+import com.hichem.soft.tree.view.TreeNode;
+import com.hichem.soft.tree.view.TreeRoot;
+import com.hichem.soft.tree.view.TreeTraversal;
+import com.hichem.soft.tree.view.TreeUtils;
+import com.hichem.soft.tree.view.VisibleNodeList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** TreeUtils walkers and the TreeTraversal iterators behind them */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TraversalBenchmark {
+
+	@Param({TreeShapes.WIDE, TreeShapes.DEEP, TreeShapes.BALANCED})
+	public String shape;
+
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+
+	private TreeRoot<String> tree;
+	private VisibleNodeList<String> rows;
+
+	@Setup
+	public void setup() {
+		tree = TreeShapes.build(shape, size);
+		rows = new VisibleNodeList<>(tree);
+	}
+
+	@Benchmark
+	public List<TreeNode<String>> getAllNodes() {
+		return TreeUtils.getAllNodes(tree);
+	}
+
+	@Benchmark
+	public List<TreeNode<String>> getLeafNodes() {
+		return TreeUtils.getLeafNodes(tree);
+	}
+
+	@Benchmark
+	public List<TreeNode<String>> getExpandedNodes() {
+		return TreeUtils.getExpandedNodes(tree);
+	}
+
+	@Benchmark
+	public void preOrder(Blackhole bh) {
+		for (TreeNode<String> node : TreeTraversal.iterate(tree, TreeTraversal.Order.PRE_ORDER)) {
+			bh.consume(node);
+		}
+	}
+
+	@Benchmark
+	public void postOrder(Blackhole bh) {
+		for (TreeNode<String> node : TreeTraversal.iterate(tree, TreeTraversal.Order.POST_ORDER)) {
+			bh.consume(node);
+		}
+	}
+
+	@Benchmark
+	public void levelOrder(Blackhole bh) {
+		for (TreeNode<String> node : TreeTraversal.iterate(tree, TreeTraversal.Order.LEVEL_ORDER)) {
+			bh.consume(node);
+		}
+	}
+
+	/** Full flatten of the visible rows, what refresh() pays */
+	@Benchmark
+	public int visibleRowsRebuild() {
+		rows.rebuild();
+		return rows.size();
+	}
+}
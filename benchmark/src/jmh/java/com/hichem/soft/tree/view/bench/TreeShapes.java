@@ -0,0 +1,73 @@
+package com.hichem.soft.tree.view.bench;
+
+import com.hichem.soft.tree.view.TreeNode;
+import com.hichem.soft.tree.view.TreeRoot;
+
+/** Builds benchmark trees of a given shape and node count; every node is expanded */
+public final class TreeShapes {
+
+	public static final String WIDE = "WIDE";
+	public static final String DEEP = "DEEP";
+	public static final String BALANCED = "BALANCED";
+
+	/** Length of each chain in the DEEP shape */
+	static final int CHAIN_LENGTH = 1000;
+	/** Children per node in the BALANCED shape */
+	static final int FAN_OUT = 8;
+
+	private TreeShapes() {
+	}
+
+	/** Data of the i-th node created; all node data is unique */
+	public static String dataOf(int i) {
+		return "n" + i;
+	}
+
+	public static TreeRoot<String> build(String shape, int size) {
+		TreeRoot<String> roots = new TreeRoot<>();
+		TreeNode<String> root = node(0);
+		roots.add(root);
+		switch (shape) {
+			case WIDE:
+				// One root with every other node as a direct child
+				for (int i = 1; i < size; i++) {
+					root.addChild(node(i));
+				}
+				break;
+			case DEEP:
+				// Chains of CHAIN_LENGTH nodes hanging from the root
+				TreeNode<String> tail = root;
+				for (int i = 1; i < size; i++) {
+					if ((i - 1) % CHAIN_LENGTH == 0)
+						tail = root;
+					TreeNode<String> next = node(i);
+					tail.addChild(next);
+					tail = next;
+				}
+				break;
+			case BALANCED:
+				// Complete FAN_OUT-ary tree filled level by level
+				TreeNode<String>[] nodes = newArray(size);
+				nodes[0] = root;
+				for (int i = 1; i < size; i++) {
+					nodes[i] = node(i);
+					nodes[(i - 1) / FAN_OUT].addChild(nodes[i]);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown shape " + shape);
+		}
+		return roots;
+	}
+
+	private static TreeNode<String> node(int i) {
+		TreeNode<String> node = new TreeNode<>(dataOf(i));
+		node.expanded = true;
+		return node;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TreeNode<String>[] newArray(int size) {
+		return (TreeNode<String>[]) new TreeNode<?>[size];
+	}
+}